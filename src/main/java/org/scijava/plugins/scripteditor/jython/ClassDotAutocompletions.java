@@ -29,13 +29,43 @@
 package org.scijava.plugins.scripteditor.jython;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.scijava.ui.swing.script.autocompletion.CompletionText;
 
 public class ClassDotAutocompletions extends DefVarDotAutocompletions {
-	final List<String> superclassNames; // List of superclasses
-	final List<CompletionText>dotAutocompletions; // List of class methods and fields
+	/** The name of the placeholder for a function argument, e.g. "self" until its class is known. */
+	static final String UNKNOWN = "<unknown>";
+	List<String> superclassNames; // List of superclasses
+	List<CompletionText>dotAutocompletions; // List of class methods and fields
+	/** The superclasses, by their name in superclassNames, that are python classes defined in the same file or python builtins. */
+	Map<String, ClassDotAutocompletions> localSuperclasses;
+	/** The linearization and members of this class, once frozen; see {@link #getMembers()}. */
+	private volatile Resolved resolved;
+	
+	/** The method resolution order of a class and its members in that order,
+	 *  for a given {@link Scope#getModuleTableGeneration()}. */
+	static private final class Resolved {
+		final int generation;
+		/** This class and its superclasses: either {@link ClassDotAutocompletions} for python classes,
+		 *  or the names of java classes and of python classes that couldn't be parsed. */
+		final List<Object> linearization;
+		final List<MemberDescriptor> members;
+		
+		Resolved(final int generation, final List<Object> linearization, final List<MemberDescriptor> members) {
+			this.generation = generation;
+			this.linearization = linearization;
+			this.members = members;
+		}
+	}
 	
 	/**
 	 * 
@@ -47,49 +77,287 @@ public class ClassDotAutocompletions extends DefVarDotAutocompletions {
 	 */
 	public ClassDotAutocompletions(final String fnName, List<String> superclassNames,
 			final List<String> argumentNames, final List<CompletionText> dotAutocompletions, final Scope class_scope) {
-		super(fnName, null, argumentNames, class_scope);
+		this(fnName, superclassNames, new HashMap<>(), argumentNames, dotAutocompletions, class_scope);
+	}
+	
+	/**
+	 * 
+	 * @param fnName
+	 * @param superclassNames
+	 * @param localSuperclasses Those of the superclassNames that are python classes defined in the same file.
+	 * @param argumentNames
+	 * @param dotAutocompletions
+	 * @param class_scope
+	 */
+	public ClassDotAutocompletions(final String fnName, List<String> superclassNames, final Map<String, ClassDotAutocompletions> localSuperclasses,
+			final List<String> argumentNames, final List<CompletionText> dotAutocompletions, final Scope class_scope) {
+		super(fnName, (String)null, argumentNames, class_scope);
 		this.superclassNames = superclassNames;
+		this.localSuperclasses = localSuperclasses;
 		this.dotAutocompletions = dotAutocompletions;
 	}
 	
+	/**
+	 * Find the superclass named baseName as seen from the parent scope of a class definition,
+	 * and add it to superclassNames, and also to localSuperclasses if it is a python class of the same file.
+	 * 
+	 * @param baseName As written in the class definition, e.g. "VirtualStack", "Base" or "mymodule.Base".
+	 * @param parent
+	 * @param superclassNames
+	 * @param localSuperclasses
+	 */
+	static void addSuperclass(final String baseName, final Scope parent,
+			final List<String> superclassNames, final Map<String, ClassDotAutocompletions> localSuperclasses) {
+		DotAutocompletions da = parent.find(baseName, null);
+		if (da instanceof ClassDotAutocompletions) {
+			superclassNames.add(baseName);
+			localSuperclasses.put(baseName, (ClassDotAutocompletions)da);
+			return;
+		}
+		String className = null == da ? null : da.getClassname();
+		final int idot = baseName.indexOf('.');
+		if (null == className && idot > 0) {
+			// e.g. "mymodule.Base" after "import mymodule"
+			da = parent.find(baseName.substring(0, idot), null);
+			if (null != da && null != da.getClassname())
+				className = da.getClassname() + baseName.substring(idot);
+		}
+		if (null == className)
+			JythonDev.printTrace(n -> "Could not find completions and className for " + n, baseName);
+		else
+			superclassNames.add(className);
+	}
+	
 	@Override
 	public List<CompletionText> get() {
-		final List<CompletionText> ac = new ArrayList<>(this.dotAutocompletions);
-		for (final String className: this.superclassNames) {
-			List<CompletionText> fm = DotAutocompletions.getPublicFieldsAndMethods(className);
-			if (fm.isEmpty()) {
-				// Maybe it's a python class
-				// get them all via the org.python.indexer.Indexer and Builtins classes, see StaticDotAutocompletions
-				JythonDev.print("Don't know yet how to handle class " + className);
+		return getMembers().stream().map(m -> m.ct).collect(Collectors.toList());
+	}
+	
+	/**
+	 * The members of this class followed by those of its superclasses in C3 method resolution order,
+	 * with python members overridden in a subclass listed only once.
+	 * Once frozen, they are computed only once for this version of the class definition,
+	 * and again only if the python modules loaded by the {@link Scope#indexer} are cleared.
+	 */
+	@Override
+	public List<MemberDescriptor> getMembers() {
+		return resolve(Collections.newSetFromMap(new IdentityHashMap<>())).members;
+	}
+	
+	/**
+	 * @return This class followed by its superclasses in C3 method resolution order, as python does:
+	 *         {@link ClassDotAutocompletions} for python classes, and the names of java classes
+	 *         and of python classes that couldn't be parsed.
+	 */
+	public List<Object> getLinearization() {
+		return resolve(Collections.newSetFromMap(new IdentityHashMap<>())).linearization;
+	}
+	
+	private Resolved resolve(final Set<ClassDotAutocompletions> visiting) {
+		final int generation = Scope.getModuleTableGeneration();
+		final Resolved cached = this.resolved;
+		if (null != cached && generation == cached.generation) return cached;
+		if (!visiting.add(this)) {
+			JythonDev.printTrace(n -> "Circular inheritance for class " + n, this.fnName);
+			return new Resolved(generation, Collections.singletonList(this), Collections.emptyList());
+		}
+		try {
+			final List<Object> bases = new ArrayList<>();
+			final List<List<Object>> sequences = new ArrayList<>();
+			for (final String name: this.superclassNames) {
+				final Object base = findSuperclass(name);
+				bases.add(base);
+				sequences.add(base instanceof ClassDotAutocompletions ?
+						((ClassDotAutocompletions)base).resolve(visiting).linearization
+						: Collections.singletonList(base));
+			}
+			sequences.add(bases);
+			List<Object> linearization = new ArrayList<>();
+			linearization.add(this);
+			if (!merge(sequences, linearization)) {
+				JythonDev.printTrace(n -> "Inconsistent method resolution order for class " + n + ": using depth-first order", this.fnName);
+				linearization = new ArrayList<>();
+				linearization.add(this);
+				for (final List<Object> sequence: sequences)
+					for (final Object c: sequence)
+						if (!linearization.contains(c)) linearization.add(c);
+			}
+			final Resolved r = new Resolved(generation, Collections.unmodifiableList(linearization),
+					Collections.unmodifiableList(collectMembers(linearization)));
+			if (this.frozen) this.resolved = r;
+			return r;
+		} finally {
+			visiting.remove(this);
+		}
+	}
+	
+	/**
+	 * @param name One of the superclassNames.
+	 * @return The {@link ClassDotAutocompletions} of a python class of the same file or of a python module, or else the name itself.
+	 */
+	private Object findSuperclass(final String name) {
+		final ClassDotAutocompletions local = this.localSuperclasses.get(name);
+		if (null != local) return local;
+		try {
+			Class.forName(name);
+			return name;
+		} catch (final ClassNotFoundException | LinkageError e) {
+			// Maybe it's a python class
+		}
+		final ClassDotAutocompletions cda = Scope.findPythonClass(name);
+		return null == cda ? name : cda;
+	}
+	
+	/**
+	 * The C3 merge: repeatedly take the first head of the sequences that isn't in the tail of any of them.
+	 * 
+	 * @param sequences The linearizations of the superclasses, followed by the list of the superclasses.
+	 * @param linearization To append the merged sequences to.
+	 * @return false if there isn't a consistent order.
+	 */
+	static private boolean merge(final List<List<Object>> sequences, final List<Object> linearization) {
+		final List<LinkedList<Object>> seqs = new ArrayList<>();
+		for (final List<Object> sequence: sequences)
+			if (!sequence.isEmpty()) seqs.add(new LinkedList<>(sequence));
+		while (!seqs.isEmpty()) {
+			Object head = null;
+			for (final LinkedList<Object> seq: seqs) {
+				final Object candidate = seq.getFirst();
+				boolean inTail = false;
+				for (final LinkedList<Object> other: seqs) {
+					if (other.lastIndexOf(candidate) > 0) {
+						inTail = true;
+						break;
+					}
+				}
+				if (!inTail) {
+					head = candidate;
+					break;
+				}
+			}
+			if (null == head) return false;
+			linearization.add(head);
+			for (final LinkedList<Object> seq: seqs)
+				if (seq.getFirst().equals(head)) seq.removeFirst();
+			seqs.removeIf(LinkedList::isEmpty);
+		}
+		return true;
+	}
+	
+	static private List<MemberDescriptor> collectMembers(final List<Object> linearization) {
+		final List<MemberDescriptor> members = new ArrayList<>();
+		final Set<String> names = new HashSet<>();
+		for (final Object c: linearization) {
+			if (c instanceof ClassDotAutocompletions) {
+				for (final CompletionText ct: ((ClassDotAutocompletions)c).dotAutocompletions) {
+					final MemberDescriptor m = new MemberDescriptor(ct);
+					if (names.add(m.name)) members.add(m);
+				}
+			} else {
+				final List<MemberDescriptor> fm = superclassMembers((String)c);
+				if (fm.isEmpty())
+					JythonDev.printTrace(n -> "Could not find the members of class " + n, c);
+				members.addAll(fm);
+			}
+		}
+		return members;
+	}
+	
+	/**
+	 * @param className Either a java class or a python class defined in a module, e.g. "mymodule.MyClass".
+	 * @return The public members of the java class, cached per class; or the members of the python class, via the {@link Scope#indexer}.
+	 */
+	static private List<MemberDescriptor> superclassMembers(final String className) {
+		try {
+			return MemberDescriptor.publicMembersOf(Class.forName(className));
+		} catch (final ClassNotFoundException | LinkageError e) {
+			// Maybe it's a python class
+		}
+		final List<MemberDescriptor> members = new ArrayList<>();
+		for (final String name: Scope.pythonClassMemberNames(className))
+			members.add(new MemberDescriptor(new CompletionText(name)));
+		return members;
+	}
+	
+	/**
+	 * Add attributes assigned to a name, e.g. "width" for "a.width = 10", as completions of that name.
+	 * The class of the name, when it is a class definition or was frozen in an earlier parse, isn't changed:
+	 * instead, the name is bound in {@code scope} to an instance of it with the attribute, see {@link #instanceOf(ClassDotAutocompletions)}.
+	 * 
+	 * @param names The name followed by the attributes, e.g. ["a", "width"] or ["self", "volume", "name"].
+	 * @param scope The scope of the assignment.
+	 */
+	static void assignAttribute(final List<String> names, final Scope scope) {
+		String varName = names.get(0);
+		Scope scopeC = scope;
+		for (int i=1; i<names.size(); ++i) {
+			final DotAutocompletions ac = scopeC.find(varName, DotAutocompletions.EMPTY); // in the first iteration it finds the completions for the base name
+			if (!(ac instanceof ClassDotAutocompletions)) return; // e.g. self.doThis().that = 10 
+			ClassDotAutocompletions cda = (ClassDotAutocompletions)ac;
+			if (cda.frozen || cda.isDefinition()) {
+				if (1 != i) return; // can't rebind e.g. "b" in "a.b.c = 10"
+				cda = instanceOf(cda);
+				scope.putVar(varName, cda);
 			}
-			ac.addAll(fm);
+			varName = names.get(i);
+			cda.put(new CompletionText(varName)); // add varName (e.g. "width") as a possible expansion for the prior varName (e.g. "self").
+			scopeC = cda.scope; // prepare scope for next iteration
 		}
-		return ac;
+	}
+	
+	/** @return An instance of {@code cda} without attributes of its own yet: the class is its only superclass. */
+	static ClassDotAutocompletions instanceOf(final ClassDotAutocompletions cda) {
+		final Map<String, ClassDotAutocompletions> local = new HashMap<>();
+		local.put(cda.fnName, cda);
+		return new ClassDotAutocompletions(cda.fnName, new ArrayList<>(Collections.singletonList(cda.fnName)), local,
+				new ArrayList<>(cda.argumentNames), new ArrayList<>(), cda.scope);
+	}
+	
+	/** @return Whether this is the definition of a class, as bound to its name in the scope where it was defined. */
+	private boolean isDefinition() {
+		return null != this.scope && null != this.scope.parent && this.fnName.equals(this.scope.className)
+				&& this == this.scope.parent.vars.get(this.fnName);
 	}
 	
 	public void put(final CompletionText entry) {
+		if (this.frozen) {
+			JythonDev.printTrace((e, c) -> "Ignoring " + e + ": class " + c + " is frozen", entry, this.fnName);
+			return;
+		}
 		if (this.dotAutocompletions.contains(entry)) return; // list search OK: very low N
 		this.dotAutocompletions.add(entry);
 	}
 	
 	/** Make this be cda plus its own dotAutocompletions.
+	 * Copies the lists of cda, which may be unmodifiable (e.g. {@link Collections#emptyList()}) or later frozen.
 	 * 
 	 * @param cda
 	 */
 	public void mutateIntoPlus(final ClassDotAutocompletions cda) 
 	{
+		if (this.frozen) throw new IllegalStateException("Can't modify a frozen ClassDotAutocompletions");
 		this.className = cda.className;
 		this.fnName = cda.fnName;
-		this.superclassNames.clear();
-		this.superclassNames.addAll(cda.superclassNames);
-		this.dotAutocompletions.addAll(cda.dotAutocompletions);
-		this.argumentNames.clear();
-		this.argumentNames.addAll(cda.argumentNames);
+		this.superclassNames = new ArrayList<>(cda.superclassNames);
+		this.localSuperclasses = new HashMap<>(cda.localSuperclasses);
+		final List<CompletionText> dotAutocompletions = new ArrayList<>(this.dotAutocompletions);
+		dotAutocompletions.addAll(cda.dotAutocompletions);
+		this.dotAutocompletions = dotAutocompletions;
+		this.argumentNames = new ArrayList<>(cda.argumentNames);
 		this.scope = cda.scope;
 	}
 	
+	@Override
+	void freeze() {
+		if (this.frozen) return;
+		this.superclassNames = Collections.unmodifiableList(this.superclassNames);
+		this.localSuperclasses = Collections.unmodifiableMap(this.localSuperclasses);
+		this.dotAutocompletions = Collections.unmodifiableList(this.dotAutocompletions);
+		super.freeze();
+	}
+	
 	@Override
 	public String toString() {
-		return "ClassDotAutocompletions: " + this.fnName + "(" + String.join(", ", this.argumentNames) + ")" + " -- " + String.join(", ", this.get().toString());
+		return "ClassDotAutocompletions: " + this.fnName + "(" + String.join(", ", this.argumentNames) + ")" + " extends (" + String.join(", ", this.superclassNames) + ") -- " + this.dotAutocompletions;
 	}
 }
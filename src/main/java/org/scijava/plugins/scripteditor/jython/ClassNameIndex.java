@@ -0,0 +1,323 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.scijava.ui.swing.script.autocompletion.ClassUtil;
+
+/**
+ * Index of the simple names of all java classes known to {@link ClassUtil},
+ * to find class names by prefix, by camel-hump abbreviation (e.g. "IP" for
+ * ImagePlus and ImageProcessor, or "ImPr" for ImageProcessor) and by substring.
+ *
+ * Queries return at most a given number of fully qualified class names,
+ * best matches first, using a bounded heap rather than sorting all hits.
+ */
+public class ClassNameIndex
+{
+	/** Match categories, from best to worst. */
+	static private final int PREFIX = 0,
+							 HUMPS = 1,
+							 PREFIX_IGNORE_CASE = 2,
+							 SUBSTRING = 3,
+							 NONE = Integer.MAX_VALUE;
+
+	static private volatile ClassNameIndex instance = null;
+
+	/** Whether the index is being built, or was built, in the background. */
+	static private final AtomicBoolean started = new AtomicBoolean();
+
+	/** Fully qualified class names, sorted by their lower case simple name. */
+	private final String[] classNames;
+	/** Simple class names, in the same order as {@code classNames}. */
+	private final String[] simpleNames;
+	/** Lower case simple class names, sorted. */
+	private final String[] lowerNames;
+	/** The capital letters of each simple class name, e.g. "IP" for "ImagePlus". */
+	private final String[] humps;
+	/** Indices into the arrays above, sorted by their {@code humps}. */
+	private final int[] byHumps;
+	/** For each lower case trigram (see {@link #trigram(String, int)}), the sorted indices of the simple class names that contain it. */
+	private final int[][] trigrams = new int[TRIGRAMS][];
+
+	/** Trigrams are encoded with 6 bits per char: a-z, 0-9 and '_' each get their own code, any other char shares the last one. */
+	static private final int TRIGRAMS = 64 * 64 * 64;
+	static private final int[] EMPTY = new int[0];
+
+	/**
+	 * @param fullClassNames Fully qualified class names; inner classes (with a '$') are ignored.
+	 */
+	public ClassNameIndex(final Stream<String> fullClassNames) {
+		final List<String[]> entries = fullClassNames
+				.filter(s -> -1 == s.indexOf('$'))
+				.distinct()
+				.map(s -> {
+					final String simple = s.substring(s.lastIndexOf('.') + 1);
+					return new String[]{ s, simple, simple.toLowerCase() };
+				})
+				.sorted(Comparator.comparing((String[] e) -> e[2]).thenComparing(e -> e[0]))
+				.collect(Collectors.toList());
+		final int n = entries.size();
+		this.classNames = new String[n];
+		this.simpleNames = new String[n];
+		this.lowerNames = new String[n];
+		this.humps = new String[n];
+		// Count, then fill, the postings of each trigram
+		final int[] counts = new int[TRIGRAMS];
+		for (int i=0; i<n; ++i) {
+			final String[] e = entries.get(i);
+			this.classNames[i] = e[0];
+			this.simpleNames[i] = e[1];
+			this.lowerNames[i] = e[2];
+			this.humps[i] = humpsOf(e[1]);
+			for (int k=0; k<e[2].length() - 2; ++k)
+				++counts[trigram(e[2], k)]; // may overcount when a trigram repeats within a name
+		}
+		for (int t=0; t<TRIGRAMS; ++t)
+			this.trigrams[t] = 0 == counts[t] ? EMPTY : new int[counts[t]];
+		final int[] sizes = new int[TRIGRAMS];
+		for (int i=0; i<n; ++i) {
+			final String lowerName = this.lowerNames[i];
+			for (int k=0; k<lowerName.length() - 2; ++k) {
+				final int t = trigram(lowerName, k);
+				if (sizes[t] > 0 && i == this.trigrams[t][sizes[t] -1]) continue; // repeated within the same name
+				this.trigrams[t][sizes[t]++] = i;
+			}
+		}
+		for (int t=0; t<TRIGRAMS; ++t)
+			if (sizes[t] < counts[t]) this.trigrams[t] = Arrays.copyOf(this.trigrams[t], sizes[t]);
+		this.byHumps = new int[n];
+		final Integer[] order = new Integer[n];
+		for (int i=0; i<n; ++i) order[i] = i;
+		Arrays.sort(order, Comparator.comparing((Integer i) -> this.humps[i]));
+		for (int i=0; i<n; ++i) this.byHumps[i] = order[i];
+	}
+
+	/**
+	 * @return The shared index, or null if it isn't built yet: never blocks.
+	 */
+	static public ClassNameIndex get() {
+		return instance;
+	}
+
+	/**
+	 * Build the shared index, if not built already, from the class names found by {@link ClassUtil}.
+	 * Blocks until {@link ClassUtil#ensureCache()} returns.
+	 */
+	static public ClassNameIndex ensure() {
+		final ClassNameIndex index = instance;
+		if (null != index) return index;
+		synchronized (ClassNameIndex.class) {
+			if (null == instance) {
+				ClassUtil.ensureCache();
+				final long start = System.currentTimeMillis();
+				instance = new ClassNameIndex(ClassUtil.findClassNamesContaining(""));
+				JythonDev.print((built, t0) -> "Indexed " + built.size() + " class names in " + (System.currentTimeMillis() - t0) + " ms", instance, start);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Build the shared index with {@code executor}, unless it is built or being built already:
+	 * only the first of any number of text areas, or of {@link JythonAnalysisService}s, starts it.
+	 */
+	static public void ensureInBackground(final Executor executor) {
+		if (null == instance && started.compareAndSet(false, true))
+			executor.execute(ClassNameIndex::ensure);
+	}
+
+	public int size() {
+		return this.classNames.length;
+	}
+
+	/**
+	 * Find classes whose simple name starts with, abbreviates in camel humps, or contains {@code query}.
+	 *
+	 * @param query The text typed so far, e.g. "Imag", "IP", "ImPr" or "process".
+	 * @param maxResults The maximum number of class names to return.
+	 * @return Fully qualified class names, best matches first: case-sensitive prefix matches,
+	 *         then camel-hump matches, then case-insensitive prefix matches, then substring matches;
+	 *         shorter simple names first within each category.
+	 */
+	public List<String> find(final String query, final int maxResults) {
+		if (null == query || query.isEmpty() || maxResults < 1) return Collections.emptyList();
+		final String lowerQuery = query.toLowerCase();
+		final String queryHumps = humpsOf(query);
+		// Max-heap: the worst of the best hits so far is at the head, ready to be evicted
+		final PriorityQueue<long[]> heap = new PriorityQueue<>(maxResults + 1, (a, b) -> Long.compare(b[0], a[0]));
+
+		// Prefix matches, case-insensitive: a contiguous range of the sorted lowerNames
+		for (int i = lowerBound(this.lowerNames, lowerQuery); i < this.lowerNames.length && this.lowerNames[i].startsWith(lowerQuery); ++i)
+			offer(heap, maxResults, i, classify(i, query, lowerQuery, queryHumps));
+
+		// Camel-hump matches: a contiguous range of the names sorted by humps
+		if (queryHumps.length() > 1) {
+			for (int k = lowerBound(this.byHumps, queryHumps); k < this.byHumps.length && this.humps[this.byHumps[k]].startsWith(queryHumps); ++k) {
+				final int i = this.byHumps[k];
+				// Prefix matches were offered above, and substring matches are offered below
+				if (!this.lowerNames[i].startsWith(lowerQuery) && HUMPS == classify(i, query, lowerQuery, queryHumps))
+					offer(heap, maxResults, i, HUMPS);
+			}
+		}
+
+		// Substring matches: intersection of the trigram postings
+		if (lowerQuery.length() > 2) {
+			int[] candidates = null;
+			for (int k=0; k<lowerQuery.length() - 2; ++k) {
+				final int[] p = this.trigrams[trigram(lowerQuery, k)];
+				candidates = null == candidates ? p : intersect(candidates, p);
+				if (0 == candidates.length) break;
+			}
+			for (final int i: candidates) {
+				final int category = classify(i, query, lowerQuery, queryHumps);
+				if (SUBSTRING == category) offer(heap, maxResults, i, category); // others were offered above
+			}
+		}
+
+		return toClassNames(heap);
+	}
+
+	/** Find the best category of match for the simple class name at {@code i}, without allocating. */
+	private int classify(final int i, final String query, final String lowerQuery, final String queryHumps) {
+		final String simpleName = this.simpleNames[i];
+		if (simpleName.startsWith(query)) return PREFIX;
+		if (queryHumps.length() > 1 && this.humps[i].startsWith(queryHumps) && matchesHumps(simpleName, query)) return HUMPS;
+		if (this.lowerNames[i].startsWith(lowerQuery)) return PREFIX_IGNORE_CASE;
+		if (this.lowerNames[i].contains(lowerQuery)) return SUBSTRING;
+		return NONE;
+	}
+
+	private void offer(final PriorityQueue<long[]> heap, final int maxResults, final int i, final int category) {
+		if (NONE == category) return;
+		// Rank by category, then by the length of the simple name, then alphabetically (the index order)
+		final long rank = ((long)category << 48) | ((long)Math.min(this.simpleNames[i].length(), 0xffff) << 32) | i;
+		if (heap.size() < maxResults) {
+			heap.add(new long[]{ rank, i });
+		} else if (rank < heap.peek()[0]) {
+			heap.poll();
+			heap.add(new long[]{ rank, i });
+		}
+	}
+
+	private List<String> toClassNames(final PriorityQueue<long[]> heap) {
+		final String[] names = new String[heap.size()];
+		for (int k = names.length -1; k > -1; --k)
+			names[k] = this.classNames[(int)heap.poll()[1]];
+		return Arrays.asList(names);
+	}
+
+	/**
+	 * Whether each hump of the query, e.g. "Im" and "Pr" for "ImPr", is a prefix
+	 * of the corresponding hump of {@code name}, e.g. "Image" and "Processor" for "ImageProcessor".
+	 */
+	static private boolean matchesHumps(final String name, final String query) {
+		int n = 0; // position in name
+		int q = 0; // position in query
+		while (q < query.length()) {
+			if (n >= name.length()) return false;
+			// Both are at the start of a hump: match chars until the end of the query's hump
+			int qEnd = q + 1;
+			while (qEnd < query.length() && !Character.isUpperCase(query.charAt(qEnd))) ++qEnd;
+			if (!name.regionMatches(n, query, q, qEnd - q)) return false;
+			q = qEnd;
+			if (q == query.length()) return true;
+			// Advance name to the start of its next hump
+			++n;
+			while (n < name.length() && !Character.isUpperCase(name.charAt(n))) ++n;
+		}
+		return true;
+	}
+
+	/** The first char plus any subsequent upper case chars, e.g. "IP" for "ImagePlus". */
+	static private String humpsOf(final String name) {
+		final StringBuilder sb = new StringBuilder(4);
+		for (int i=0; i<name.length(); ++i) {
+			final char c = name.charAt(i);
+			if (0 == i) sb.append(Character.toUpperCase(c));
+			else if (Character.isUpperCase(c)) sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	static private int trigram(final String s, final int i) {
+		return (code(s.charAt(i)) << 12) | (code(s.charAt(i + 1)) << 6) | code(s.charAt(i + 2));
+	}
+
+	static private int code(final char c) {
+		if (c >= 'a' && c <= 'z') return c - 'a';
+		if (c >= '0' && c <= '9') return 26 + c - '0';
+		if ('_' == c) return 36;
+		return 63;
+	}
+
+	static private int lowerBound(final String[] sorted, final String key) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (sorted[mid].compareTo(key) < 0) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	private int lowerBound(final int[] byHumps, final String key) {
+		int low = 0, high = byHumps.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (this.humps[byHumps[mid]].compareTo(key) < 0) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	static private int[] intersect(final int[] a, final int[] b) {
+		final int[] c = new int[Math.min(a.length, b.length)];
+		int i = 0, j = 0, k = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) ++i;
+			else if (a[i] > b[j]) ++j;
+			else {
+				c[k++] = a[i];
+				++i;
+				++j;
+			}
+		}
+		return Arrays.copyOf(c, k);
+	}
+}
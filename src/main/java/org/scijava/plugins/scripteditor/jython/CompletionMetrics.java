@@ -0,0 +1,294 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+import javax.management.ObjectName;
+
+/**
+ * Where the time of a completion request goes, by {@link Phase}, and how often the caches are hit, by {@link Counter}.
+ * Registered as a JMX MBean (see {@link CompletionMetricsMXBean}) to watch them in a running Fiji.
+ * 
+ * Usage: {@code final long t = CompletionMetrics.start(); ... CompletionMetrics.record(Phase.PARSE, t);}
+ * 
+ * Phases may be nested: e.g. the parsing includes the loading of the python modules that it triggers.
+ */
+public class CompletionMetrics implements CompletionMetricsMXBean
+{
+	static public final String OBJECT_NAME = "org.scijava.plugins.scripteditor.jython:type=CompletionMetrics";
+	
+	public enum Phase {
+		/** A whole call to {@link JythonAutoCompletions#completionsFor(JythonAutocompletionProvider, String, String, String)}. */
+		REQUEST,
+		/** Finding out which kind of completion the caret is at, e.g. an import or after a dot. */
+		CLASSIFY,
+		/** Parsing code that wasn't parsed recently, as a whole, one statement at a time, or outlined. */
+		PARSE,
+		/** Finding the type of the expression before a dot. */
+		INFERENCE,
+		/** Loading a python module with the indexer. */
+		MODULE_LOAD,
+		/** Listing the fields and methods of a java class, done once per class. */
+		REFLECTION,
+		/** Matching the members against the typed text and ranking the best ones. */
+		RANKING,
+		/** Creating a {@link org.fife.ui.autocomplete.Completion}. */
+		COMPLETION
+	}
+	
+	public enum Counter {
+		/** The code was parsed recently, or not. */
+		PARSE_HITS, PARSE_MISSES,
+		/** Top-level statements whose syntax tree was reused from a recent parse, or parsed anew. */
+		REUSED_STATEMENTS, PARSED_STATEMENTS,
+		/** Top-level statements found among those parsed on their own, or not. */
+		SEGMENT_HITS, SEGMENT_MISSES,
+		/** Top-level statements with errors, which were outlined instead. */
+		SEGMENT_ERRORS,
+		/** Code that couldn't be parsed at all, not even one top-level statement at a time. */
+		PARSE_FAILURES,
+		/** The code was the last one outlined, or not. */
+		OUTLINE_HITS, OUTLINE_MISSES,
+		/** Python modules that couldn't be loaded. */
+		MODULE_LOAD_FAILURES,
+		/** Sections of code that held the event dispatch thread for too long, see {@link EdtWatchdog}. */
+		STALLS
+	}
+	
+	/** Set to false to not measure anything. */
+	static public boolean enabled = true;
+	
+	static private final CompletionMetrics instance = new CompletionMetrics();
+	
+	static {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+		} catch (final Exception e) {
+			// e.g. already registered from another class loader
+			JythonDev.print(() -> "Could not register " + OBJECT_NAME, e);
+		}
+	}
+	
+	/** Durations in buckets that double in size: bucket i holds those of less than 2^i nanoseconds. */
+	static final class Histogram {
+		final LongAdder[] buckets = new LongAdder[64];
+		final LongAdder count = new LongAdder(),
+		                total = new LongAdder();
+		final LongAccumulator max = new LongAccumulator(Math::max, 0);
+		
+		Histogram() {
+			for (int i=0; i<this.buckets.length; ++i)
+				this.buckets[i] = new LongAdder();
+		}
+		
+		void record(final long nanos) {
+			this.buckets[Math.min(63, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)))].increment();
+			this.count.increment();
+			this.total.add(nanos);
+			this.max.accumulate(nanos);
+		}
+		
+		/** @return The upper bound, in nanoseconds, of the bucket that contains the p-th percentile, with p from 0 to 100. */
+		long percentile(final double p) {
+			final long count = this.count.sum();
+			if (0 == count) return 0;
+			final long rank = (long)Math.ceil(p / 100 * count);
+			long sum = 0;
+			for (int i=0; i<this.buckets.length; ++i) {
+				sum += this.buckets[i].sum();
+				if (sum >= rank) return Math.min(1L << i, this.max.get());
+			}
+			return this.max.get();
+		}
+		
+		double mean() {
+			final long count = this.count.sum();
+			return 0 == count ? 0 : this.total.sum() / (double)count;
+		}
+		
+		void reset() {
+			for (final LongAdder bucket: this.buckets) bucket.reset();
+			this.count.reset();
+			this.total.reset();
+			this.max.reset();
+		}
+	}
+	
+	private final Histogram[] histograms = new Histogram[Phase.values().length];
+	private final LongAdder[] counters = new LongAdder[Counter.values().length];
+	/** Stalls by section, see {@link EdtWatchdog}. */
+	private final Map<String, LongAdder> stalls = new ConcurrentHashMap<>();
+	private volatile String lastStall = "";
+	
+	private CompletionMetrics() {
+		for (int i=0; i<this.histograms.length; ++i)
+			this.histograms[i] = new Histogram();
+		for (int i=0; i<this.counters.length; ++i)
+			this.counters[i] = new LongAdder();
+	}
+	
+	static public CompletionMetrics get() {
+		return instance;
+	}
+	
+	/** @return The time at which a phase starts, to pass to {@link #record(Phase, long)}. */
+	static public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+	
+	/**
+	 * @param phase
+	 * @param start As returned by {@link #start()}.
+	 * @return The duration of the phase in nanoseconds, or 0 if not {@link #enabled}.
+	 */
+	static public long record(final Phase phase, final long start) {
+		if (!enabled || 0 == start) return 0;
+		final long nanos = System.nanoTime() - start;
+		instance.histograms[phase.ordinal()].record(nanos);
+		return nanos;
+	}
+	
+	static public void count(final Counter counter) {
+		if (enabled) instance.counters[counter.ordinal()].increment();
+	}
+	
+	static public void count(final Counter counter, final long n) {
+		if (enabled) instance.counters[counter.ordinal()].add(n);
+	}
+	
+	/**
+	 * Count a stall as soon as it happens, even when not {@link #enabled}: it is rare, and worth knowing about.
+	 * 
+	 * @param section The section of code that holds the event dispatch thread for too long, e.g. "completion".
+	 * @param stack The stack of the thread at the time.
+	 */
+	static void stalled(final String section, final String stack) {
+		instance.counters[Counter.STALLS.ordinal()].increment();
+		instance.stalls.computeIfAbsent(section, s -> new LongAdder()).increment();
+		instance.lastStall = section + "\n" + stack;
+	}
+	
+	/** @return The current value of the counter. */
+	public long getCounter(final Counter counter) {
+		return this.counters[counter.ordinal()].sum();
+	}
+	
+	Histogram getHistogram(final Phase phase) {
+		return this.histograms[phase.ordinal()];
+	}
+	
+	private Map<String, Double> byPhase(final ToDoubleFunction<Histogram> f) {
+		final Map<String, Double> m = new LinkedHashMap<>();
+		for (final Phase phase: Phase.values())
+			m.put(phase.name(), f.applyAsDouble(this.histograms[phase.ordinal()]));
+		return m;
+	}
+	
+	@Override
+	public Map<String, Long> getCounts() {
+		final Map<String, Long> m = new LinkedHashMap<>();
+		for (final Phase phase: Phase.values())
+			m.put(phase.name(), this.histograms[phase.ordinal()].count.sum());
+		return m;
+	}
+	
+	@Override
+	public Map<String, Double> getMeanMillis() {
+		return byPhase(h -> h.mean() / 1e6);
+	}
+	
+	@Override
+	public Map<String, Double> getP50Millis() {
+		return byPhase(h -> h.percentile(50) / 1e6);
+	}
+	
+	@Override
+	public Map<String, Double> getP90Millis() {
+		return byPhase(h -> h.percentile(90) / 1e6);
+	}
+	
+	@Override
+	public Map<String, Double> getP99Millis() {
+		return byPhase(h -> h.percentile(99) / 1e6);
+	}
+	
+	@Override
+	public Map<String, Double> getMaxMillis() {
+		return byPhase(h -> h.max.get() / 1e6);
+	}
+	
+	@Override
+	public Map<String, Long> getCounters() {
+		final Map<String, Long> m = new LinkedHashMap<>();
+		for (final Counter counter: Counter.values())
+			m.put(counter.name(), this.counters[counter.ordinal()].sum());
+		return m;
+	}
+	
+	@Override
+	public Map<String, Long> getStalls() {
+		final Map<String, Long> m = new LinkedHashMap<>();
+		for (final Map.Entry<String, LongAdder> e: this.stalls.entrySet())
+			m.put(e.getKey(), e.getValue().sum());
+		return m;
+	}
+	
+	@Override
+	public String getLastStall() {
+		return this.lastStall;
+	}
+	
+	@Override
+	public void reset() {
+		for (final Histogram h: this.histograms) h.reset();
+		for (final LongAdder counter: this.counters) counter.reset();
+		this.stalls.clear();
+		this.lastStall = "";
+	}
+	
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Phase phase: Phase.values()) {
+			final Histogram h = this.histograms[phase.ordinal()];
+			sb.append(String.format("%s: %d, mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms\n", phase, h.count.sum(),
+					h.mean() / 1e6, h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.max.get() / 1e6));
+		}
+		for (final Counter counter: Counter.values())
+			sb.append(counter).append(": ").append(this.counters[counter.ordinal()].sum()).append('\n');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.Map;
+
+/**
+ * The timings and counters of {@link CompletionMetrics}, as seen over JMX, e.g. in JConsole or VisualVM,
+ * under the name {@value CompletionMetrics#OBJECT_NAME}.
+ * Timings are by {@link CompletionMetrics.Phase}, and counters by {@link CompletionMetrics.Counter}.
+ * Percentiles are approximate: the upper bound of a bucket, each bucket twice as large as the previous.
+ */
+public interface CompletionMetricsMXBean
+{
+	public Map<String, Long> getCounts();
+	
+	public Map<String, Double> getMeanMillis();
+	
+	public Map<String, Double> getP50Millis();
+	
+	public Map<String, Double> getP90Millis();
+	
+	public Map<String, Double> getP99Millis();
+	
+	public Map<String, Double> getMaxMillis();
+	
+	public Map<String, Long> getCounters();
+	
+	/** The number of stalls of the event dispatch thread by section of code, see {@link EdtWatchdog}. */
+	public Map<String, Long> getStalls();
+	
+	/** The section of code and the stack of the last stall, or an empty string. */
+	public String getLastStall();
+	
+	/** Start counting anew. */
+	public void reset();
+}
@@ -102,6 +102,16 @@ public class CustomFunctionCompletion extends FunctionCompletion
 		return super.getShortDescription();
 	}
 	
+	/** The number of parameters, to sort overloads; see {@link #compareTo(Completion)}. */
+	protected int getParamTypeCount() {
+		return this.getParamCount();
+	}
+	
+	/** The type of a parameter, to sort overloads; see {@link #compareTo(Completion)}. */
+	protected String getParamType(final int index) {
+		return this.getParam(index).getType();
+	}
+	
 	@Override
 	public int compareTo(final Completion c2)
 	{
@@ -110,14 +120,15 @@ public class CustomFunctionCompletion extends FunctionCompletion
 			final CustomFunctionCompletion other = (CustomFunctionCompletion)c2;
 			int r = this.getSuperName().compareToIgnoreCase(other.getSuperName()); // must be lower case because AbstractCompletion does it that way
 			if ( 0 == r ) {
-				if ( this.getParamCount() == other.getParamCount() ) {
-					for (int i=0; i<this.getParamCount(); ++i) {
-						r = this.getParam(i).getType().compareTo(other.getParam(i).getType());
+				final int n = this.getParamTypeCount();
+				if ( n == other.getParamTypeCount() ) {
+					for (int i=0; i<n; ++i) {
+						r = this.getParamType(i).compareTo(other.getParamType(i));
 						if ( 0 != r ) return r;
 					}
 					return 0;
 				}
-				return this.getParamCount() < other.getParamCount() ? -1 : 1;
+				return n < other.getParamTypeCount() ? -1 : 1;
 			}
 			return r;
 		}
@@ -28,13 +28,28 @@
  */
 package org.scijava.plugins.scripteditor.jython;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.scijava.ui.swing.script.autocompletion.CompletionText;
 
 public class DefVarDotAutocompletions extends VarDotAutocompletions {
 
 	String fnName;
-	final List<String> argumentNames;
+	List<String> argumentNames;
 	Scope scope;
+	boolean frozen = false;
+	/** Computes the returned value on first use, when the function body is parsed lazily; null once computed. */
+	private volatile Supplier<DotAutocompletions> returnedValue = null;
+	/** The python class of the returned value, if so, in which case {@link #className} is null. */
+	private ClassDotAutocompletions returnedPythonClass = null;
+	/** The functions whose return type is being inferred by the current thread, to not recurse into recursive functions. */
+	static private final ThreadLocal<Set<DefVarDotAutocompletions>> resolving =
+			ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
 	
 	public DefVarDotAutocompletions(final String fnName, final String returnClassName, final List<String> argumentNames, final Scope scope) {
 		super(returnClassName);
@@ -43,12 +58,96 @@ public class DefVarDotAutocompletions extends VarDotAutocompletions {
 		this.scope = scope;
 	}
 	
+	/**
+	 * 
+	 * @param fnName
+	 * @param returnedValue Computes the returned value, only when first needed: null if unknown,
+	 *                      a {@link ClassDotAutocompletions} for a python class, or else one with the name of a java class.
+	 * @param argumentNames
+	 * @param scope
+	 */
+	public DefVarDotAutocompletions(final String fnName, final Supplier<DotAutocompletions> returnedValue, final List<String> argumentNames, final Scope scope) {
+		this(fnName, (String)null, argumentNames, scope);
+		this.returnedValue = returnedValue;
+	}
+	
+	/**
+	 * Infer the return type without holding a lock on this, given that inferring it can parse function bodies (see {@link Scope#parseDeferredBody()}):
+	 * two threads may both infer it, to the same result, and the first one to finish sets it.
+	 */
+	private void resolveReturnClassName() {
+		final Supplier<DotAutocompletions> supplier = this.returnedValue;
+		if (null == supplier) return;
+		final Set<DefVarDotAutocompletions> current = resolving.get();
+		if (!current.add(this)) return; // a recursive function
+		DotAutocompletions returned = null;
+		try {
+			returned = supplier.get();
+		} catch (final Throwable t) {
+			JythonDev.printError(t);
+		} finally {
+			current.remove(this);
+			synchronized (this) {
+				if (null != this.returnedValue) {
+					if (returned instanceof ClassDotAutocompletions)
+						this.returnedPythonClass = (ClassDotAutocompletions)returned;
+					else if (null != returned)
+						this.className = returned.getClassname();
+					this.returnedValue = null; // after setting the returned class, for other threads to see it
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return The python class of the value returned by this function if so, or else this,
+	 *         whose completions are those of the java class of the returned value.
+	 */
+	DotAutocompletions getReturned() {
+		resolveReturnClassName();
+		final ClassDotAutocompletions pyClass = this.returnedPythonClass;
+		return null == pyClass ? this : pyClass;
+	}
+	
+	@Override
+	public String getClassname() {
+		resolveReturnClassName();
+		return super.getClassname();
+	}
+	
+	@Override
+	public List<CompletionText> get() {
+		final DotAutocompletions returned = getReturned();
+		return this == returned ? super.get() : returned.get();
+	}
+	
+	@Override
+	public List<MemberDescriptor> getMembers() {
+		final DotAutocompletions returned = getReturned();
+		return this == returned ? super.getMembers() : returned.getMembers();
+	}
+	
+	@Override
+	public Stream<CompletionText> getStream() {
+		final DotAutocompletions returned = getReturned();
+		return this == returned ? super.getStream() : returned.getStream();
+	}
+	
 	public List<String> getArgumentNames() {
 		return this.argumentNames;
 	}
 	
+	/** Make this and its scope immutable, along with the enclosing {@link Scope}. */
+	void freeze() {
+		if (this.frozen) return;
+		this.frozen = true;
+		this.argumentNames = Collections.unmodifiableList(this.argumentNames);
+		if (null != this.scope) this.scope.freeze();
+	}
+	
 	@Override
 	public String toString() {
+		resolveReturnClassName();
 		return "DefVarAutocompletions:" +
 				"  Class: " + super.className +
 				"  Arguments: " + String.join(", ", this.argumentNames);
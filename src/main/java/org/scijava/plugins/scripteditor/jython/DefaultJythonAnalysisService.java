@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default {@link JythonAnalysisService}: its worker pool is also the one on which {@link JythonScriptParser}
+ * parses long scripts concurrently, for as long as the service lives; unless that of another service,
+ * of another context in the same JVM, was in use first, see {@link JythonScriptParser#usePool(ForkJoinPool)}.
+ * Nothing is started until the first session is opened, so that a context without text areas, e.g. a headless one,
+ * doesn't pay for the pool nor for the index of class names.
+ */
+@Plugin(type = Service.class)
+public class DefaultJythonAnalysisService extends AbstractService implements JythonAnalysisService
+{
+	private final Map<RSyntaxTextArea, JythonSession> sessions = new ConcurrentHashMap<>();
+	private ForkJoinPool pool; // guarded by this
+	private boolean disposed = false; // guarded by this
+	/** The class loader of the thread that initialized the service, for the workers to find classes, e.g. for the index. */
+	private ClassLoader loader;
+	
+	@Override
+	public void initialize() {
+		this.loader = Thread.currentThread().getContextClassLoader();
+	}
+	
+	/**
+	 * Start the pool and, on it, the building of the index of class names, unless started already or disposed.
+	 * 
+	 * @return The pool, or null if disposed.
+	 */
+	private synchronized ForkJoinPool start() {
+		if (this.disposed) return null;
+		if (null != this.pool) {
+			JythonScriptParser.usePool(this.pool); // once that of another service is released
+			return this.pool;
+		}
+		// Leave a core for the event dispatch thread
+		final ClassLoader loader = null == this.loader ? Thread.currentThread().getContextClassLoader() : this.loader;
+		final AtomicInteger count = new AtomicInteger();
+		this.pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), p -> {
+			final ForkJoinWorkerThread t = new ForkJoinWorkerThread(p) {};
+			t.setName("Jython analysis " + count.incrementAndGet());
+			t.setDaemon(true);
+			t.setContextClassLoader(loader);
+			return t;
+		}, null, false);
+		JythonScriptParser.usePool(this.pool);
+		ClassNameIndex.ensureInBackground(this.pool);
+		return this.pool;
+	}
+	
+	@Override
+	public ForkJoinPool getWorkerPool() {
+		return start();
+	}
+	
+	@Override
+	public JythonSession openSession(final RSyntaxTextArea textArea) {
+		start();
+		return this.sessions.computeIfAbsent(textArea, JythonSession::new);
+	}
+	
+	@Override
+	public void closeSession(final RSyntaxTextArea textArea) {
+		final JythonSession session = this.sessions.remove(textArea);
+		if (null != session) session.release();
+	}
+	
+	@Override
+	public JythonSession getSession(final RSyntaxTextArea textArea) {
+		return this.sessions.get(textArea);
+	}
+	
+	@Override
+	public Collection<JythonSession> getSessions() {
+		return new ArrayList<>(this.sessions.values());
+	}
+	
+	@Override
+	public void dispose() {
+		for (final RSyntaxTextArea textArea: new ArrayList<>(this.sessions.keySet()))
+			closeSession(textArea);
+		synchronized (this) {
+			this.disposed = true;
+			if (null == this.pool) return;
+			JythonScriptParser.releasePool(this.pool);
+			this.pool.shutdown();
+		}
+	}
+}
@@ -55,24 +55,41 @@ public interface DotAutocompletions {
 	default public Stream<CompletionText> getStream() {
 		return get().stream();
 	}
+	
+	/**
+	 * @return The same as {@link #get()}, with precomputed names for matching against a seed.
+	 */
+	default public List<MemberDescriptor> getMembers() {
+		return MemberDescriptor.wrap(get());
+	}
 
 	static public List<CompletionText> getPublicFieldsAndMethods(final String className) {
 		final List<CompletionText> ac = new ArrayList<>();
 		if (null != className) {
+			final long t = CompletionMetrics.start();
 			try {
-				final Class<?> c = Class.forName(className);
-				for (final Field f: c.getFields())
-					ac.add(new CompletionText(f.getName(), c, f));
-				for (final Method m: c.getMethods())
-					ac.add(new CompletionText(m.getName() + "()", c, m)); // TODO could do a parameter-driven autocompletion
+				publicFieldsAndMethodsInto(Class.forName(className), ac);
 			} catch (final Exception e) {
-				JythonDev.print("Could not load class " + className, e);
+				JythonDev.print(() -> "Could not load class " + className, e);
 			}
+			CompletionMetrics.record(CompletionMetrics.Phase.REFLECTION, t);
 		}
 		return ac;
 	}
 	
 
+	/** Collect public fields and methods from {@code c}, including inherited ones, into {@code ac}.
+	 * 
+	 * @param c
+	 * @param ac
+	 */
+	static public void publicFieldsAndMethodsInto(final Class<?> c, final List<CompletionText> ac) {
+		for (final Field f: c.getFields())
+			ac.add(new CompletionText(f.getName(), c, f));
+		for (final Method m: c.getMethods())
+			ac.add(new CompletionText(m.getName() + "()", c, m)); // TODO could do a parameter-driven autocompletion
+	}
+	
 	/** Collect static fields and static methods from {@code c} into {@code ac}.
 	 * 
 	 * @param c
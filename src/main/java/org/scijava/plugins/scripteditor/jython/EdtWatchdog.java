@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects when code of this plugin holds the event dispatch thread for longer than {@link #budgetMillis},
+ * such as a completion request or the insertion of a completion and its import statement.
+ * A stall is counted in {@link CompletionMetrics} as soon as the budget is exceeded, with the stack of the thread at that time,
+ * so that it can be seen over JMX even while the thread is still stuck; and it is kept, with its duration, in {@link #getStalls()}.
+ * 
+ * Usage: {@code try (final EdtWatchdog.Watch w = EdtWatchdog.enter("completion")) { ... }}
+ * 
+ * The calling thread is watched whichever it is, so that headless tests can enforce a budget
+ * by running the same code outside the event dispatch thread, e.g.:
+ * {@code EdtWatchdog.budgetMillis = 100; EdtWatchdog.clear(); ...; if (!EdtWatchdog.getStalls().isEmpty()) fail}
+ */
+public class EdtWatchdog
+{
+	/** Holding the thread longer than this is a stall. Defaults to the system property {@code scijava.jython.stallBudget}. */
+	static public long budgetMillis = Long.getLong("scijava.jython.stallBudget", 50);
+	
+	/** Set to false to not watch anything. */
+	static public boolean enabled = true;
+	
+	/** The maximum number of stalls to keep, the oldest discarded first. */
+	static public int maxStalls = 100;
+	
+	/** A section of code that held its thread for longer than the budget. */
+	static public final class Stall {
+		/** E.g. "completion". */
+		public final String section;
+		/** How long the section held its thread, in total. */
+		public final long millis;
+		/** The stack of the thread when the budget was exceeded, a frame per line. */
+		public final String stack;
+		
+		Stall(final String section, final long millis, final String stack) {
+			this.section = section;
+			this.millis = millis;
+			this.stack = stack;
+		}
+		
+		@Override
+		public String toString() {
+			return this.section + " held the thread for " + this.millis + " ms, at:\n" + this.stack;
+		}
+	}
+	
+	static private final ArrayDeque<Stall> stalls = new ArrayDeque<>();
+	
+	static private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+		final Thread t = new Thread(r, "Jython EDT watchdog");
+		t.setDaemon(true);
+		return t;
+	});
+	static {
+		timer.setRemoveOnCancelPolicy(true); // most sections end within budget
+	}
+	
+	/** A section of code being watched, to close when it ends. */
+	static public final class Watch implements AutoCloseable {
+		private final Thread thread = Thread.currentThread();
+		private final long start = System.nanoTime();
+		private final String section;
+		private final ScheduledFuture<?> timeout;
+		private volatile String stack;
+		
+		private Watch(final String section, final long budgetMillis) {
+			this.section = section;
+			this.timeout = timer.schedule(this::stalled, budgetMillis, TimeUnit.MILLISECONDS);
+		}
+		
+		private void stalled() {
+			final StringBuilder sb = new StringBuilder();
+			for (final StackTraceElement frame: this.thread.getStackTrace())
+				sb.append(frame).append('\n');
+			this.stack = sb.toString();
+			CompletionMetrics.stalled(this.section, this.stack);
+		}
+		
+		@Override
+		public void close() {
+			if (!this.timeout.cancel(false)) {
+				// The stall is being or was recorded: wait for it, so that it is counted when the section ends
+				try {
+					this.timeout.get();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (final ExecutionException e) {
+					JythonDev.printError(e);
+				}
+			}
+			final String stack = this.stack;
+			if (null == stack) return;
+			final Stall stall = new Stall(this.section, (System.nanoTime() - this.start) / 1000000, stack);
+			synchronized (stalls) {
+				while (stalls.size() >= Math.max(1, maxStalls)) stalls.removeFirst();
+				stalls.addLast(stall);
+			}
+			JythonDev.print(() -> "Stall: " + stall.section + " held the thread for " + stall.millis + " ms");
+			JythonDev.printTrace(stall);
+		}
+	}
+	
+	/**
+	 * Start watching a section of code run by the calling thread.
+	 * 
+	 * @param section The name of the section, e.g. "completion".
+	 * @return The watch to close when the section ends, or null when not {@link #enabled}:
+	 * try-with-resources skips closing a null resource.
+	 */
+	static public Watch enter(final String section) {
+		return enabled ? new Watch(section, budgetMillis) : null;
+	}
+	
+	/** @return The stalls so far, oldest first, up to {@link #maxStalls}. */
+	static public List<Stall> getStalls() {
+		synchronized (stalls) {
+			return new ArrayList<>(stalls);
+		}
+	}
+	
+	/** Forget the stalls so far, e.g. before a test. */
+	static public void clear() {
+		synchronized (stalls) {
+			stalls.clear();
+		}
+	}
+}
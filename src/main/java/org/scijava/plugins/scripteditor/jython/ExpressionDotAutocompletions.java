@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.scijava.ui.swing.script.autocompletion.CompletionText;
+
+/**
+ * The completions for a variable assigned an expression, e.g. "imp = IJ.getImage()",
+ * inferred by parsing only that expression, and only when first needed.
+ * The names in the expression are those bound when it was assigned, as in "imp = imp.duplicate()",
+ * and not those bound by later statements.
+ */
+public class ExpressionDotAutocompletions implements DotAutocompletions {
+	final String expression;
+	final Scope scope;
+	/** The names used in the expression that were bound in {@link #scope} at the assignment. */
+	final Map<String, DotAutocompletions> bound;
+	private volatile DotAutocompletions da = null;
+	private boolean resolving = false; // guarded by this
+	
+	/**
+	 * 
+	 * @param expression The python expression, e.g. the right side of an assignment.
+	 * @param bound The names used in the expression, as bound in {@code scope} at the assignment.
+	 * @param scope The {@code Scope} of the assignment, whose enclosing scopes have the names used in the expression and not in {@code bound}.
+	 */
+	public ExpressionDotAutocompletions(final String expression, final Map<String, DotAutocompletions> bound, final Scope scope) {
+		this.expression = expression;
+		this.bound = bound;
+		this.scope = scope;
+	}
+	
+	private DotAutocompletions resolve() {
+		DotAutocompletions da = this.da;
+		if (null != da) return da;
+		synchronized (this) {
+			if (null != this.da) return this.da;
+			if (this.resolving) return DotAutocompletions.EMPTY; // e.g. "x = x + 1"
+			this.resolving = true;
+			try {
+				da = JythonScriptParser.parseExpression(this.expression, Scope.snapshot(this.scope, this.bound));
+			} finally {
+				this.resolving = false;
+			}
+			this.da = da;
+			return da;
+		}
+	}
+	
+	@Override
+	public String getClassname() {
+		return resolve().getClassname();
+	}
+	
+	@Override
+	public String getSummary() {
+		return resolve().getSummary();
+	}
+	
+	@Override
+	public List<CompletionText> get() {
+		return resolve().get();
+	}
+	
+	@Override
+	public Stream<CompletionText> getStream() {
+		return resolve().getStream();
+	}
+	
+	@Override
+	public List<MemberDescriptor> getMembers() {
+		return resolve().getMembers();
+	}
+	
+	@Override
+	public String toString() {
+		return "ExpressionDotAutocompletions: " + this.expression + (null == this.da ? "" : " --> " + this.da);
+	}
+}
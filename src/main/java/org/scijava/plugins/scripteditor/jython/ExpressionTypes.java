@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.List;
+
+import org.python.antlr.PythonTree;
+import org.python.antlr.ast.Attribute;
+import org.python.antlr.ast.Call;
+import org.python.antlr.ast.ClassDef;
+import org.python.antlr.ast.FunctionDef;
+import org.python.antlr.ast.Name;
+
+/**
+ * Infers, on demand, the {@link DotAutocompletions} of the {@code Name}, {@code Attribute} and {@code Call} nodes
+ * of some parsed code, by the offset at which the node ends, e.g. to look up what is before a dot.
+ * 
+ * Nothing is inferred up front nor kept: each lookup infers only the expression that ends at the requested offset,
+ * descending from its top-level statement only into the nodes that contain it, so that a lookup costs the same
+ * regardless of the size of the statement.
+ */
+public class ExpressionTypes
+{
+	/** A top-level statement, whose nodes are in the scope of the parse that it belongs to. */
+	static final class Statement {
+		/** Null when the statement couldn't be parsed, see {@link OutlineParser}. */
+		final PythonTree node;
+		/** The offset, within the whole code, of the code that was parsed into the node. */
+		final int offset;
+		/** The offset at which the statement starts within the whole code. */
+		final int start;
+		final Scope scope;
+		
+		Statement(final PythonTree node, final int offset, final Scope scope) {
+			this.node = node;
+			this.offset = offset;
+			this.start = null == node ? offset : offset + node.getCharStartIndex();
+			this.scope = scope;
+		}
+		
+		/**
+		 * @param end The offset within the whole code.
+		 * @return The type of the outermost expression of this statement that ends at {@code end}, or null if none.
+		 */
+		DotAutocompletions typeAt(final int end) {
+			if (null == this.node) return null;
+			try {
+				return find(this.node, this.scope, this.offset, end);
+			} catch (final Exception e) {
+				JythonDev.printError(e);
+				return null;
+			}
+		}
+	}
+	
+	private final List<Statement> statements;
+	
+	ExpressionTypes(final List<Statement> statements) {
+		this.statements = statements;
+	}
+	
+	/**
+	 * @param offset The offset in the code right after the expression, e.g. where a dot would follow.
+	 * @return The {@code DotAutocompletions} of the outermost expression that ends at {@code offset}, or null if none.
+	 */
+	public DotAutocompletions typeAt(final int offset) {
+		// The last statement that starts before offset
+		Statement statement = null;
+		for (int low = 0, high = this.statements.size() - 1; low <= high; ) {
+			final int mid = (low + high) >>> 1;
+			final Statement s = this.statements.get(mid);
+			if (s.start < offset) {
+				statement = s;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return null == statement ? null : statement.typeAt(offset);
+	}
+	
+	/**
+	 * Infer the type of the outermost node that ends at {@code end} and whose type is known,
+	 * descending only into the nodes that contain {@code end}.
+	 */
+	static private DotAutocompletions find(final PythonTree node, final Scope scope, final int offset, final int end) {
+		if ((node instanceof Name || node instanceof Attribute || node instanceof Call) && offset + node.getCharStopIndex() + 1 == end) {
+			final DotAutocompletions da = JythonScriptParser.maybeStaticToDot(node, JythonScriptParser.parseRight(node, scope));
+			if (DotAutocompletions.EMPTY != da) return da;
+		}
+		if (null == node.getChildren()) return null;
+		Scope inner = scope;
+		if (node instanceof FunctionDef || node instanceof ClassDef) {
+			// The body is in the scope of the definition
+			final String name = node instanceof FunctionDef ? ((FunctionDef)node).getInternalName() : ((ClassDef)node).getInternalName();
+			final DotAutocompletions da = scope.find(name, null);
+			if (da instanceof DefVarDotAutocompletions && null != ((DefVarDotAutocompletions)da).scope)
+				inner = ((DefVarDotAutocompletions)da).scope;
+		}
+		for (final PythonTree child: node.getChildren()) {
+			if (!contains(child, offset, end)) continue;
+			final DotAutocompletions da = find(child, inner, offset, end);
+			if (null != da) return da;
+		}
+		return null;
+	}
+	
+	/** @return Whether the code of the node includes the character before {@code end}, or its span is unknown. */
+	static private boolean contains(final PythonTree node, final int offset, final int end) {
+		final int start = node.getCharStartIndex(),
+		          stop = node.getCharStopIndex();
+		return start < 0 || stop < 0 || (offset + start < end && offset + stop + 1 >= end);
+	}
+}
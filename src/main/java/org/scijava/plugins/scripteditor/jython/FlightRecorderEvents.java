@@ -0,0 +1,189 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events for completion requests, parses and python module loads,
+ * to correlate them with GC pauses and stalls of the event dispatch thread in a recording.
+ * 
+ * The jdk.jfr API is used via reflection, given that this library is compiled for Java 8;
+ * without JFR (e.g. on Java 8 before 8u262), no events are emitted.
+ * 
+ * The events are named e.g. "org.scijava.jython.CompletionRequest", to enable them in a recording's settings.
+ * 
+ * When no recording has the events enabled, {@link #begin(Type)} reads a volatile field and returns null,
+ * and callers skip gathering the values of the fields.
+ * Otherwise: {@code final Object event = FlightRecorderEvents.begin(Type.PARSE); ... if (null != event) FlightRecorderEvents.commit(event, values...);}
+ */
+public class FlightRecorderEvents
+{
+	public enum Type {
+		/** A call to {@link JythonAutoCompletions#completionsFor(JythonAutocompletionProvider, String, String, String)}. */
+		COMPLETION_REQUEST("Completion Request",
+				String.class, "kind", "Completion kind",
+				int.class, "documentLength", "Document Length",
+				int.class, "candidates", "Candidates",
+				String.class, "cacheOutcome", "Parse Cache Outcome"),
+		/** A call to {@link JythonScriptParser#parseAST(String)} or {@link JythonScriptParser#getExpressionTypes(String)}. */
+		PARSE("Parse",
+				int.class, "documentLength", "Document Length",
+				int.class, "statements", "Top-level Statements",
+				String.class, "cacheOutcome", "Cache Outcome"),
+		/** A call to {@link Scope#loadPythonModule(String)}. */
+		MODULE_LOAD("Python Module Load",
+				String.class, "module", "Module",
+				String.class, "cacheOutcome", "Cache Outcome");
+		
+		final String label;
+		/** Triplets of type, name and label for each field. */
+		final Object[] fields;
+		/** The jdk.jfr.EventFactory and jdk.jfr.EventType, if available. */
+		Object factory, eventType;
+		/** Whether any recording has this event enabled. */
+		volatile boolean enabled = false;
+		
+		Type(final String label, final Object... fields) {
+			this.label = label;
+			this.fields = fields;
+		}
+	}
+	
+	static private MethodHandle newEvent, begin, set, commit, isEnabled;
+	
+	static {
+		try {
+			final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement"),
+			               valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor"),
+			               eventFactory = Class.forName("jdk.jfr.EventFactory"),
+			               event = Class.forName("jdk.jfr.Event"),
+			               eventType = Class.forName("jdk.jfr.EventType");
+			final Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class),
+			                     newValue = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+			for (final Type type: Type.values()) {
+				final List<Object> annotations = new ArrayList<>();
+				annotations.add(newAnnotation.newInstance(annotation("jdk.jfr.Name"), "org.scijava.jython." + type.label.replace(" ", "")));
+				annotations.add(newAnnotation.newInstance(annotation("jdk.jfr.Label"), "Jython " + type.label));
+				annotations.add(newAnnotation.newInstance(annotation("jdk.jfr.Category"), new String[]{"SciJava", "Jython Autocompletion"}));
+				final List<Object> fields = new ArrayList<>();
+				for (int i=0; i<type.fields.length; i += 3) {
+					final Object label = newAnnotation.newInstance(annotation("jdk.jfr.Label"), type.fields[i + 2]);
+					fields.add(newValue.newInstance(type.fields[i], type.fields[i + 1], Arrays.asList(label)));
+				}
+				type.factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+				type.eventType = eventFactory.getMethod("getEventType").invoke(type.factory);
+			}
+			final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			newEvent = lookup.findVirtual(eventFactory, "newEvent", MethodType.methodType(event));
+			begin = lookup.findVirtual(event, "begin", MethodType.methodType(void.class));
+			set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class));
+			commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class));
+			isEnabled = lookup.findVirtual(eventType, "isEnabled", MethodType.methodType(boolean.class));
+			// Update whether each event is enabled when recordings start or stop
+			final Class<?> listener = Class.forName("jdk.jfr.FlightRecorderListener");
+			final Object proxy = Proxy.newProxyInstance(listener.getClassLoader(), new Class<?>[]{listener}, (p, method, args) -> {
+				switch (method.getName()) {
+					case "hashCode": return System.identityHashCode(p);
+					case "equals": return p == args[0];
+					case "toString": return FlightRecorderEvents.class.getName();
+					default: updateEnabled(); return null;
+				}
+			});
+			Class.forName("jdk.jfr.FlightRecorder").getMethod("addListener", listener).invoke(null, proxy);
+			updateEnabled();
+		} catch (final Throwable t) {
+			JythonDev.printTrace(e -> "Java Flight Recorder events not available: " + e, t);
+			newEvent = null;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	static private Class<? extends Annotation> annotation(final String className) throws ClassNotFoundException {
+		return (Class<? extends Annotation>)Class.forName(className);
+	}
+	
+	static private void updateEnabled() {
+		for (final Type type: Type.values()) {
+			try {
+				type.enabled = (boolean)isEnabled.invoke(type.eventType);
+			} catch (final Throwable t) {
+				type.enabled = false;
+			}
+		}
+	}
+	
+	/** @return Whether events of this type are being recorded, e.g. to skip computing the values of their fields. */
+	static public boolean isEnabled(final Type type) {
+		return type.enabled;
+	}
+	
+	/**
+	 * Start timing an event.
+	 * 
+	 * @param type
+	 * @return The event, or null if not recording events of this type.
+	 */
+	static public Object begin(final Type type) {
+		if (!type.enabled || null == newEvent) return null;
+		try {
+			final Object event = newEvent.invoke(type.factory);
+			begin.invoke(event);
+			return event;
+		} catch (final Throwable t) {
+			JythonDev.printError(t);
+			return null;
+		}
+	}
+	
+	/**
+	 * End and commit an event.
+	 * 
+	 * @param event As returned by {@link #begin(Type)}; does nothing if null.
+	 * @param values The value of each field, in the order of the fields of its {@link Type}.
+	 */
+	static public void commit(final Object event, final Object... values) {
+		if (null == event) return;
+		try {
+			for (int i=0; i<values.length; ++i)
+				set.invoke(event, i, values[i]);
+			commit.invoke(event);
+		} catch (final Throwable t) {
+			JythonDev.printError(t);
+		}
+	}
+}
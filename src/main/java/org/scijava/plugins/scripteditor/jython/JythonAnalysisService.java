@@ -0,0 +1,71 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.scijava.service.SciJavaService;
+
+/**
+ * Jython code analysis for all text areas of a SciJava context: owns, once and from its first session, the pool of worker threads
+ * that parse long scripts and build the index of class names, and keeps a lightweight {@link JythonSession} per text area.
+ * 
+ * The caches of parsed code, python modules and java class members, and the index of class names, are per JVM:
+ * shared by all sessions of all contexts. So is the pool on which long scripts are parsed concurrently:
+ * that of the first service to start one, until disposed, see {@link JythonScriptParser#usePool(ForkJoinPool)}.
+ */
+public interface JythonAnalysisService extends SciJavaService
+{
+	/** @return The pool on which to analyse code in the background, e.g. to parse long scripts one statement at a time concurrently;
+	 *          started if not yet, or null once disposed. */
+	public ForkJoinPool getWorkerPool();
+	
+	/**
+	 * Start a session for {@code textArea}, or return its existing one.
+	 * The first one starts the pool of worker threads, see {@link #getWorkerPool()}.
+	 * 
+	 * @param textArea
+	 */
+	public JythonSession openSession(RSyntaxTextArea textArea);
+	
+	/**
+	 * Release the session of {@code textArea}, if any.
+	 * 
+	 * @param textArea
+	 */
+	public void closeSession(RSyntaxTextArea textArea);
+	
+	/** @return The session of {@code textArea}, or null if none. */
+	public JythonSession getSession(RSyntaxTextArea textArea);
+	
+	/** @return The open sessions. */
+	public Collection<JythonSession> getSessions();
+}
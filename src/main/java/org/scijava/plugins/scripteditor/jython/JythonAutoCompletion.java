@@ -145,32 +145,36 @@ public class JythonAutoCompletion extends AutoCompletion {
 		return importedClasses;
 	}
 	
+	@SuppressWarnings("try") // the watch is only closed
 	@Override
 	protected void insertCompletion(final Completion c, final boolean typedParamListStartChar) {
-		if (c instanceof ImportCompletion) {
-			final EditorPane editor = (EditorPane) super.getTextComponent();
-			editor.beginAtomicEdit();
-			try {
-				super.insertCompletion(c, typedParamListStartChar);
-				final ImportCompletion cc = (ImportCompletion)c;
-				final HashMap<String, Import> importedClasses = findImportedClasses(editor.getText());
-				// Insert import statement after the last import, if not there already
-				for (final Import im : importedClasses.values()) {
-					if (im.className.contentEquals(cc.getClassName()))
-						return; // don't insert
-				}
+		// Runs on the event dispatch thread, including the rescan of the imports
+		try (final EdtWatchdog.Watch watch = EdtWatchdog.enter("insertion")) {
+			if (c instanceof ImportCompletion) {
+				final EditorPane editor = (EditorPane) super.getTextComponent();
+				editor.beginAtomicEdit();
 				try {
-					final int insertAtLine = 0 == importedClasses.size() ? 0
-							: importedClasses.values().stream().map(im -> im.lineNumber).reduce(Math::max).get();
-					editor.insert(cc.getImportStatement() + "\n", editor.getLineStartOffset(0 == insertAtLine ? 0 : insertAtLine + 1));
-				} catch (BadLocationException e) {
-					e.printStackTrace();
+					super.insertCompletion(c, typedParamListStartChar);
+					final ImportCompletion cc = (ImportCompletion)c;
+					final HashMap<String, Import> importedClasses = findImportedClasses(editor.getText());
+					// Insert import statement after the last import, if not there already
+					for (final Import im : importedClasses.values()) {
+						if (im.className.contentEquals(cc.getClassName()))
+							return; // don't insert
+					}
+					try {
+						final int insertAtLine = 0 == importedClasses.size() ? 0
+								: importedClasses.values().stream().map(im -> im.lineNumber).reduce(Math::max).get();
+						editor.insert(cc.getImportStatement() + "\n", editor.getLineStartOffset(0 == insertAtLine ? 0 : insertAtLine + 1));
+					} catch (BadLocationException e) {
+						e.printStackTrace();
+					}
+				} finally {
+					editor.endAtomicEdit();
 				}
-			} finally {
-				editor.endAtomicEdit();
+			} else {
+				super.insertCompletion(c, typedParamListStartChar);
 			}
-		} else {
-			super.insertCompletion(c, typedParamListStartChar);
 		}
 	}
 }
@@ -31,13 +31,12 @@ package org.scijava.plugins.scripteditor.jython;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Parameter;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -54,8 +53,9 @@ import org.fife.ui.autocomplete.Completion;
 import org.fife.ui.autocomplete.CompletionProvider;
 import org.fife.ui.autocomplete.FunctionCompletion;
 import org.fife.ui.autocomplete.ParameterChoicesProvider;
-import org.fife.ui.autocomplete.ParameterizedCompletion;
 import org.python.indexer.types.NModuleType;
+import org.scijava.plugins.scripteditor.jython.CompletionMetrics.Counter;
+import org.scijava.plugins.scripteditor.jython.CompletionMetrics.Phase;
 import org.scijava.ui.swing.script.autocompletion.CompletionText;
 
 public class JythonAutoCompletions {
@@ -71,6 +71,9 @@ public class JythonAutoCompletions {
 
 	static public final List<String> jython_jar_modules;
 	
+	/** Number of dot completions ranked, and listed by the {@link JythonAutocompletionProvider}. */
+	static public int MAX_RANKED_COMPLETIONS = 100;
+	
 	static {
 		List<String> ls = Collections.emptyList();
 		try {
@@ -107,9 +110,50 @@ public class JythonAutoCompletions {
 	}
 	
 	
+	/** The kind of completion of the last request, e.g. "dot"; see {@link #classified(String, long)}. */
+	private String kind;
+	
 	public JythonAutoCompletions() {}
 
-	public List<Completion> completionsFor(final JythonAutocompletionProvider provider, String codeWithoutLastLine, final String lastLine, final String alreadyEnteredText) {
+	public List<Completion> completionsFor(final JythonAutocompletionProvider provider, final String codeWithoutLastLine, final String lastLine, final String alreadyEnteredText) {
+		final long t = CompletionMetrics.start();
+		final Object event = FlightRecorderEvents.begin(FlightRecorderEvents.Type.COMPLETION_REQUEST);
+		final long parseHits = null == event ? 0 : CompletionMetrics.get().getCounter(Counter.PARSE_HITS),
+		           parseMisses = null == event ? 0 : CompletionMetrics.get().getCounter(Counter.PARSE_MISSES);
+		this.kind = "none";
+		List<Completion> completions = null;
+		try {
+			completions = completions(provider, codeWithoutLastLine, lastLine, alreadyEnteredText);
+			return completions;
+		} finally {
+			CompletionMetrics.record(Phase.REQUEST, t);
+			if (null != event) {
+				final String cacheOutcome = CompletionMetrics.get().getCounter(Counter.PARSE_MISSES) > parseMisses ? "miss"
+						: CompletionMetrics.get().getCounter(Counter.PARSE_HITS) > parseHits ? "hit" : "none";
+				FlightRecorderEvents.commit(event, this.kind, codeWithoutLastLine.length() + lastLine.length(),
+						null == completions ? 0 : completions.size(), cacheOutcome);
+			}
+		}
+	}
+	
+	/** @return The kind of completion of the last request, e.g. "dot", or "none". */
+	String getKind() {
+		return this.kind;
+	}
+	
+	/**
+	 * Record which kind of completion the caret is at, and how long it took to find out.
+	 * 
+	 * @param kind E.g. "import" or "dot".
+	 * @param classifyStart As returned by {@link CompletionMetrics#start()}.
+	 */
+	private void classified(final String kind, final long classifyStart) {
+		this.kind = kind;
+		CompletionMetrics.record(Phase.CLASSIFY, classifyStart);
+	}
+	
+	private List<Completion> completions(final JythonAutocompletionProvider provider, String codeWithoutLastLine, final String lastLine, final String alreadyEnteredText) {
+		final long classifyStart = CompletionMetrics.start();
 		
 		// Replacing of text will start at crop, given the already entered text that is considered for replacement
 		final int crop = lastLine.length() - alreadyEnteredText.length();
@@ -133,7 +177,7 @@ public class JythonAutoCompletions {
 			if (me.find()) {
 				codeWithoutLastLine = codeWithoutLastLine.substring(0, priorLineBreak + 1) + me.group(1) + me.group(2);
 				add_pass = true;
-				JythonDev.printTrace("changed code to: \n" + codeWithoutLastLine + "\n###");
+				JythonDev.printTrace(s -> "changed code to: \n" + s + "\n###", codeWithoutLastLine);
 			}
 		}
 		
@@ -142,10 +186,10 @@ public class JythonAutoCompletions {
 			final Matcher mpath = sysPathAppend.matcher(codeWithoutLastLine);
 			while (mpath.find()) {
 				final File path = new File(mpath.group(1));
-				if (path.exists() && path.isDirectory() && !Scope.indexer.getLoadPath().stream().filter(s -> path.equals(new File(s))).findFirst().isPresent())
-					Scope.indexer.addPath(path.getAbsolutePath());
+				if (path.exists() && path.isDirectory() && !Scope.getLoadPath().stream().filter(s -> path.equals(new File(s))).findFirst().isPresent())
+					Scope.addLoadPath(path.getAbsolutePath());
 			}
-			JythonDev.printTrace("PYTHONPATH:\n" + String.join("\n", Scope.indexer.getLoadPath()));
+			JythonDev.printTrace(() -> "PYTHONPATH:\n" + String.join("\n", Scope.getLoadPath()));
 		} catch (Exception e) {
 			JythonDev.print("Failed to add path from sys.path.append expression.", e);
 		}
@@ -157,6 +201,7 @@ public class JythonAutoCompletions {
 		
 		final Matcher mi = importPkg.matcher(lastLine);
 		if (mi.find()) {
+			classified("import", classifyStart);
 			// Complete package name
 			final String first = mi.group(1), // import or from
 			             pkgName = mi.group(2);
@@ -168,7 +213,7 @@ public class JythonAutoCompletions {
 					.collect(Collectors.toList()));
 			// Find completions among sys.path libraries
 			final String pkgNameFile = pkgName.replace('.', '/');
-			ac.addAll(Scope.indexer.getLoadPath().stream()
+			ac.addAll(Scope.getLoadPath().stream()
 					.map(dir -> {
 						try {
 							return Files.walk(new File(dir).toPath(), FileVisitOption.FOLLOW_LINKS)
@@ -190,6 +235,7 @@ public class JythonAutoCompletions {
 		
 		final Matcher mm = importMember.matcher(lastLine);
 		if (mm.find()) {
+			classified("member_import", classifyStart);
 			// Complete member name
 			final String pkgName = mm.group(1),
 					     member = mm.group(2) == null ? "" : mm.group(2);
@@ -204,7 +250,7 @@ public class JythonAutoCompletions {
 			if (null != mod) {
 				// Module exists but its __init__.py is empty. Look into its folder
 				final ArrayList<Completion> ac = new ArrayList<>();
-				for (final String dir : Scope.indexer.getLoadPath()) {
+				for (final String dir : Scope.getLoadPath()) {
 					final File fdir = new File(dir + pkgName.replace('.', '/'));
 					if (fdir.exists() && fdir.isDirectory()) {
 						for (final String filename: fdir.list()) {
@@ -232,7 +278,9 @@ public class JythonAutoCompletions {
 		*/
 		
 		if (m1.find()) {
-			final Scope scope = JythonScriptParser.parseAST(codeWithoutLastLine).getLast();
+			classified("name", classifyStart);
+			// Names only: the outline suffices, and tolerates errors in the code
+			final Scope scope = OutlineParser.parse(codeWithoutLastLine).getLast();
 			// Handle argument suggestions for constructors and functions
 			provider.setParameterChoicesProvider(new CustomParameterChoicesProvider(provider, scope));
 			final Map<String, String> names = scope.findStartsWith2(m1.group(2));
@@ -249,7 +297,7 @@ public class JythonAutoCompletions {
 									m1.group(2), new CompletionText(e.getKey(), c, constructor), provider));
 						}
 					} catch (ClassNotFoundException cnfe) {
-						JythonDev.printTrace("Can't load class: " + classname);
+						JythonDev.printTrace(c -> "Can't load class: " + c, classname);
 					}
 				}
 				// Add the simple classname completion
@@ -261,12 +309,13 @@ public class JythonAutoCompletions {
 		JythonDev.printTrace("invocation.matcher:");
 		final Matcher m1c = invocation.matcher(lastLine);
 		if (m1c.find()) {
+			classified("invocation", classifyStart);
 			final String name = m1c.group(2).substring(0, m1c.group(2).length() -1);
-			JythonDev.printTrace("    name: " + name);
+			JythonDev.printTrace(n -> "    name: " + n, name);
 			final Scope scope = JythonScriptParser.parseAST(codeWithoutLastLine).getLast();
 			final DotAutocompletions da = scope.find(name, DotAutocompletions.EMPTY);
 			provider.setParameterChoicesProvider(new CustomParameterChoicesProvider(provider, scope));
-			JythonDev.print(da);
+			JythonDev.printTrace(da); // toString() reflects: only when tracing
 			if (da instanceof ConstructorAutocompletions) {
 				JythonDev.printTrace("da is a ConstructorAutocompletions");
 				return da.get().stream()
@@ -278,6 +327,7 @@ public class JythonAutoCompletions {
 		
 		final Matcher m2 = dotNameToken.matcher(lastLine);
 		if (m2.find()) {
+			classified("dot", classifyStart);
 			final String seed = m2.group(3); // can be empty
 			// Expand fields and methods of previous class
 			// Assume code is correct up to the dot
@@ -305,10 +355,15 @@ public class JythonAutoCompletions {
 				}
 				varName = "____GRAB____"; // an injected var to capture the returned class
 				code = codeWithoutLastLine + (add_pass ? ": pass" : "") + suffix + lastLine.substring(0, start) + varName + " = " + lastLine.substring(start, lastLine.length() - 1 - seed.length());
-				JythonDev.printTrace("codeWithoutLastLine:\n" + codeWithoutLastLine);
+				JythonDev.printTrace(s -> "codeWithoutLastLine:\n" + s, codeWithoutLastLine);
 			}
 			final Scope scope = JythonScriptParser.parseAST(code);
-			final DotAutocompletions da = scope.getLast().find(varName, DotAutocompletions.EMPTY);
+			// The expression before the dot ends where the code ends
+			final long inferenceStart = CompletionMetrics.start();
+			final ExpressionTypes types = JythonScriptParser.getExpressionTypes(code);
+			final DotAutocompletions typeAtDot = null == types ? null : types.typeAt(code.length());
+			final DotAutocompletions da = null != typeAtDot ? typeAtDot : scope.getLast().find(varName, DotAutocompletions.EMPTY);
+			CompletionMetrics.record(Phase.INFERENCE, inferenceStart);
 			final String fullPre = lastLine.substring(crop);
 			final String pre = fullPre.substring(0, fullPre.lastIndexOf(seed));
 			final String lowerCaseSeed = seed.toLowerCase();
@@ -316,40 +371,51 @@ public class JythonAutoCompletions {
 			// Depends on scope
 			provider.setParameterChoicesProvider(new CustomParameterChoicesProvider(provider, scope));
 			
-			List<Completion> list = da.get().stream()
-					.filter(s -> s.getReplacementText().toLowerCase().contains(lowerCaseSeed))
-					//.map(s -> s.getCompletion(provider, pre + s.getReplacementText(), s.getReplacementText().startsWith(seed) ? 1 : 0))
-					.map(s -> makeDotCompletion(pre, lowerCaseSeed, s, provider))
-					.collect(Collectors.toList());
-			sortCompletions(list, seed);
-			return list;
+			// Match the seed against precomputed names, keeping the kind of match for ranking
+			final List<MemberDescriptor> members = da.getMembers();
+			final long rankingStart = CompletionMetrics.start();
+			final List<MemberDescriptor> matches = new ArrayList<>();
+			final int[] categories = new int[members.size()];
+			for (final MemberDescriptor member: members) {
+				final int category = member.match(seed, lowerCaseSeed);
+				if (MemberDescriptor.NO_MATCH == category) continue;
+				categories[matches.size()] = category;
+				matches.add(member);
+			}
+			// Prefix matches first, then alphabetically; Completion instances are created only when listed
+			final RankedCompletions<MemberDescriptor> ranked = new RankedCompletions<>(matches,
+					Arrays.copyOf(categories, matches.size()),
+					m -> m.name,
+					//s -> s.getCompletion(provider, pre + s.getReplacementText(), s.getReplacementText().startsWith(seed) ? 1 : 0))
+					m -> makeDotCompletion(pre, lowerCaseSeed, m.ct, provider),
+					MAX_RANKED_COMPLETIONS);
+			CompletionMetrics.record(Phase.RANKING, rankingStart);
+			return ranked;
 		}
 
 		return Collections.emptyList();
 	}
 	
 	protected static Completion makeDotCompletion(final String pre, final String seed, final CompletionText ct, final CompletionProvider provider) {
-		final List<Parameter> ps = ct.getMethodArgs();
-		if (null != ps && null != ct.getReturnType()) { // ) && !ps.isEmpty()) {
-			JythonDev.printTrace("using FunctionCompletion: ps is " + ps.stream().map(Parameter::toString).collect(Collectors.joining(", ", "[", "]")));
+		final long t = CompletionMetrics.start();
+		try {
+			return createDotCompletion(pre, seed, ct, provider);
+		} finally {
+			CompletionMetrics.record(Phase.COMPLETION, t);
+		}
+	}
+	
+	static private Completion createDotCompletion(final String pre, final String seed, final CompletionText ct, final CompletionProvider provider) {
+		if (null != ct.getMethodArgs() && null != ct.getReturnType()) {
+			JythonDev.printTrace(c -> "using FunctionCompletion: " + c.getReplacementText(), ct);
 			String text = ct.getReplacementText();
 			if (text.endsWith("()")) text = text.substring(0, text.length() -2); // remove trailing parentheses
-			final FunctionCompletion fc = new CustomFunctionCompletion(
-					provider,
-					pre + text,
-					ct.getReturnType());
-			fc.setReturnValueDescription(ct.getReturnType());
-			fc.setShortDescription(ct.getSummary()); // CompletionText.getDescription returns null
-			//fc.setSummary(ct.getSummary()); // useless: later, FunctionCompletion doesn't use the summary from its superclass
-			final ArrayList<ParameterizedCompletion.Parameter> params = new ArrayList<>();
-			for (int i=0; i<ps.size(); ++i) {
-				params.add(new ParameterizedCompletion.Parameter(ps.get(i).getType().getCanonicalName(), ps.get(i).getName(), false)); // can't mark last one as isEndParam = true, would not allow choosing it for some reason
-			}
-			fc.setParams(params);
+			// Parameters and descriptions are created only if the completion is shown
+			final FunctionCompletion fc = new LazyFunctionCompletion(provider, pre + text, ct);
 			fc.setRelevance(fc.getReplacementText().startsWith(seed) ? 1 : 0);
 			return fc;
 		}
-		JythonDev.printTrace("not FunctionCompletion: replacement text is " + ct.getReplacementText());
+		JythonDev.printTrace(c -> "not FunctionCompletion: replacement text is " + c.getReplacementText(), ct);
 		return ct.getCompletion(provider, pre + ct.getReplacementText(), ct.getReplacementText().startsWith(seed) ? 1 : 0);
 	}
 	
@@ -369,7 +435,7 @@ public class JythonAutoCompletions {
 			Class<?> clazz = null;
 			if (null != typeObj && typeObj instanceof Class) {
 				clazz = (Class<?>)typeObj;
-				JythonDev.printTrace("class: " + clazz + ", " + clazz.getCanonicalName());
+				JythonDev.printTrace(c -> "class: " + c + ", " + c.getCanonicalName(), clazz);
 			}
 			switch (param.getType()) {
 			case "int": clazz = Integer.class; break;
@@ -382,8 +448,8 @@ public class JythonAutoCompletions {
 			case "byte": clazz = Byte.class; break;
 			}
 			if (null != clazz) try {
-				JythonDev.printTrace("type is: " + param.getType());
-				JythonDev.printTrace("class is: " + clazz.getCanonicalName());
+				JythonDev.printTrace(p -> "type is: " + p.getType(), param);
+				JythonDev.printTrace(c -> "class is: " + c.getCanonicalName(), clazz);
 				final List<Completion> bc = scope
 						.findVarsByType(param.getType(), clazz)
 						.map(varName -> new BasicCompletion(provider, varName))
@@ -391,7 +457,7 @@ public class JythonAutoCompletions {
 				for (int i=0; i<bc.size(); ++i) {
 					((BasicCompletion)bc.get(i)).setRelevance(bc.size() - i); // ensure sorted from innermost scope to outer, rather than alphabetical
 				}
-				JythonDev.printTrace("found bc: " + bc.size());
+				JythonDev.printTrace(l -> "found bc: " + l.size(), bc);
 				return bc;
 			} catch (Exception e) {
 				JythonDev.printError(e);
@@ -405,30 +471,4 @@ public class JythonAutoCompletions {
 	private static String removeLastOptionalDot(final String s) {
 		return (s != null && s.endsWith(".")) ? s.substring(0, s.length() - 1) : s;
 	}
-
-	/**
-	 * @param completions The list of completions
-	 * @param pre         the text just before the current caret position that could
-	 *                    be the start of something auto-completable.
-	 */
-	private void sortCompletions(final List<Completion> completions, final String pre) {
-		Collections.sort(completions, new Comparator<Completion>() {
-			int prefix1Index = Integer.MAX_VALUE;
-			int prefix2Index = Integer.MAX_VALUE;
-
-			@Override
-			public int compare(final Completion o1, final Completion o2) {
-				prefix1Index = Integer.MAX_VALUE;
-				prefix2Index = Integer.MAX_VALUE;
-				if (o1.getReplacementText().startsWith(pre))
-					prefix1Index = 0;
-				if (o2.getReplacementText().startsWith(pre))
-					prefix2Index = 0;
-				if (prefix1Index == prefix2Index)
-					return o1.getReplacementText().compareTo(o2.getReplacementText());
-				else
-					return prefix1Index - prefix2Index;
-			}
-		});
-	}
 }
@@ -52,13 +52,25 @@ public class JythonAutocompletionProvider extends DefaultCompletionProvider {
 	private final JythonAutoCompletions autoCompletions = new JythonAutoCompletions();
 	private final RSyntaxTextArea text_area;
 	private final ImportFormat formatter;
+	/** Records the keystrokes and completion requests, if enabled; see {@link KeystrokeTrace#directory}. */
+	private final KeystrokeTrace trace;
+	
+	/** Maximum number of class names to list when completing a simple class name. */
+	static public int MAX_CLASS_NAME_COMPLETIONS = 100;
 	
 	public JythonAutocompletionProvider(final RSyntaxTextArea text_area, final ImportFormat formatter) {
 		this.text_area = text_area;
 		this.formatter = formatter;
 		this.setParameterizedCompletionParams('(', ", ", ')'); // for methods and functions
 		setAutoActivationRules(true, "."); // when using auto-activation, make it so that it occurs after any letter or '.'
-		new Thread(ClassUtil::ensureCache).start();
+		// calls ClassUtil.ensureCache(), unless started already e.g. by the JythonAnalysisService
+		ClassNameIndex.ensureInBackground(r -> new Thread(r, "Jython class name index").start());
+		this.trace = KeystrokeTrace.start(text_area);
+	}
+	
+	/** Stop recording keystrokes, if recording. */
+	void dispose() {
+		if (null != this.trace) this.trace.stop();
 	}
 	
 	/**
@@ -92,32 +104,53 @@ public class JythonAutocompletionProvider extends DefaultCompletionProvider {
 	
 	@Override
 	public List<Completion> getCompletionsImpl(final JTextComponent comp) {
-		final ArrayList<Completion> completions = new ArrayList<>();
-		String currentLine,
-			   codeWithoutLastLine,
-			   alreadyEnteredText = this.getAlreadyEnteredText(comp);
+		final String code;
+		final int caret = comp.getCaretPosition();
 		try {
-			codeWithoutLastLine = comp.getText(0, comp.getCaretPosition());
-			final int lastLineBreak = codeWithoutLastLine.lastIndexOf("\n") + 1;
-			currentLine = codeWithoutLastLine.substring(lastLineBreak); // up to the caret position
-			codeWithoutLastLine = codeWithoutLastLine.substring(0, lastLineBreak);
+			code = comp.getText(0, caret);
 		} catch (BadLocationException e1) {
 			e1.printStackTrace();
-			return completions;
-		}
-		// Completions provided by listeners (e.g. for methods and fields and variables and builtins from jython-autocompletion package)
-		try {
-			final List<Completion> cs = autoCompletions.completionsFor(this, codeWithoutLastLine, currentLine, alreadyEnteredText);
-			if (cs != null) completions.addAll(cs);
+			return new ArrayList<>();
 		}
-		catch (Exception e) {
-			JythonDev.print("Failed to get autocompletions from " + autoCompletions);
-			JythonDev.printError(e);
-		}
-		// Java class discovery for completions with auto-imports
-		completions.addAll(getCompletions(alreadyEnteredText));
+		final long start = System.nanoTime();
+		final List<Completion> completions = getCompletionsAt(code, this.getAlreadyEnteredText(comp));
+		if (null != this.trace) this.trace.completionRequest(caret, System.nanoTime() - start, completions.size());
 		return completions;
 	}
+	
+	/**
+	 * The completions at the end of the code, without the need for a text area, e.g. to replay a {@link KeystrokeTrace}.
+	 * 
+	 * @param code From the beginning of the document up to the caret.
+	 * @param alreadyEnteredText As in {@link #getAlreadyEnteredText(JTextComponent)}.
+	 */
+	@SuppressWarnings("try") // the watch is only closed
+	List<Completion> getCompletionsAt(final String code, final String alreadyEnteredText) {
+		try (final EdtWatchdog.Watch watch = EdtWatchdog.enter("completion")) {
+			final ArrayList<Completion> completions = new ArrayList<>();
+			final int lastLineBreak = code.lastIndexOf("\n") + 1;
+			final String currentLine = code.substring(lastLineBreak), // up to the caret position
+			             codeWithoutLastLine = code.substring(0, lastLineBreak);
+			final SlowRequestCapture capture = SlowRequestCapture.begin(codeWithoutLastLine, currentLine, alreadyEnteredText);
+			try {
+				// Completions provided by listeners (e.g. for methods and fields and variables and builtins from jython-autocompletion package)
+				try {
+					final List<Completion> cs = autoCompletions.completionsFor(this, codeWithoutLastLine, currentLine, alreadyEnteredText);
+					if (cs != null) completions.addAll(cs);
+				}
+				catch (Exception e) {
+					JythonDev.print(() -> "Failed to get autocompletions from " + autoCompletions);
+					JythonDev.printError(e);
+				}
+				// Java class discovery for completions with auto-imports
+				completions.addAll(getCompletions(alreadyEnteredText));
+				return completions;
+			} finally {
+				// Also when failing, to stop sampling and to capture what was so slow to fail
+				if (null != capture) capture.end(autoCompletions.getKind());
+			}
+		}
+	}
 
 	/** Completions to discover (autocomplete imports) and auto-import java classes. */
 	public List<Completion> getCompletions(final String text) {
@@ -139,7 +172,7 @@ public class JythonAutocompletionProvider extends DefaultCompletionProvider {
 			final String packageName = m2.group(3);
 			String className = m2.group(4); // incomplete or empty, or multiple separated by commas with the last one incomplete or empty
 
-			JythonDev.print("m2 matches className: " + className);
+			JythonDev.printTrace(c -> "m2 matches className: " + c, className);
 			final String[] bycomma = className.split(",");
 			String precomma = "";
 			if (bycomma.length > 1) {
@@ -161,12 +194,22 @@ public class JythonAutocompletionProvider extends DefaultCompletionProvider {
 		if (m3.find()) {
 			// Side effect: insert the import at the top of the file if necessary
 			//return asCompletionList(ClassUtil.findSimpleClassNamesStartingWith(m3.group(2)).stream(), m3.group(1));
-			return ClassUtil.findSimpleClassNamesStartingWith(m3.group(2)).stream()
-					.map(className -> new ImportCompletionImpl(JythonAutocompletionProvider.this,
-							m3.group(1) + className.substring(className.lastIndexOf('.') + 1),
-							className,
-							formatter.singleToImportStatement(className)))
-					.collect(Collectors.toList());
+			// Prefix, camel-hump (e.g. "IP" for ImagePlus) and substring matches, best first
+			final ClassNameIndex index = ClassNameIndex.get();
+			final List<String> classNames = null != index ?
+					index.find(m3.group(2), MAX_CLASS_NAME_COMPLETIONS)
+					: ClassUtil.findSimpleClassNamesStartingWith(m3.group(2)); // index not built yet
+			final List<Completion> ac = new ArrayList<>(classNames.size());
+			for (int i=0; i<classNames.size(); ++i) {
+				final String className = classNames.get(i);
+				final ImportCompletionImpl ic = new ImportCompletionImpl(JythonAutocompletionProvider.this,
+						m3.group(1) + className.substring(className.lastIndexOf('.') + 1),
+						className,
+						formatter.singleToImportStatement(className));
+				ic.setRelevance(classNames.size() - i); // keep the ranking rather than alphabetical
+				ac.add(ic);
+			}
+			return ac;
 		}
 		
 
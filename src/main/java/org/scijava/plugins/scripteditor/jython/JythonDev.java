@@ -28,6 +28,13 @@
  */
 package org.scijava.plugins.scripteditor.jython;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 public class JythonDev
 {
 	static public int SILENT = 0,
@@ -41,16 +48,60 @@ public class JythonDev
 	 */
 	static public int debug = MESSAGES;
 	
+	/** When true, trace messages are kept in an in-memory ring buffer even if they aren't printed,
+	 * to be retrieved with {@link #dumpTrace()} e.g. after a misbehaving completion.
+	 * Defaults to the system property {@code scijava.jython.traceBuffer}. */
+	static public volatile boolean bufferTrace = Boolean.getBoolean("scijava.jython.traceBuffer");
+	
+	/** The most recent trace messages, oldest overwritten first. */
+	static private String[] traceBuffer = new String[1000];
+	static private int traceNext = 0;
+	static private boolean traceFull = false;
+	
 	static public final void print(Object s) {
 		if (debug >= MESSAGES) System.out.println(s);
+		if (bufferTrace) buffer(s);
+	}
+	
+	/** Like {@link #print(Object)}, but {@code s} is only invoked when the message is printed or buffered. */
+	static public final void print(final Supplier<?> s) {
+		if (debug >= MESSAGES || bufferTrace) print(s.get());
+	}
+	
+	/** Like {@link #print(Supplier)}, for messages about {@code a}, as in {@link #printTrace(Function, Object)}. */
+	static public final <A> void print(final Function<A, ?> f, final A a) {
+		if (debug >= MESSAGES || bufferTrace) print(f.apply(a));
+	}
+	
+	/** Like {@link #print(Function, Object)}, for messages about {@code a} and {@code b}. */
+	static public final <A, B> void print(final BiFunction<A, B, ?> f, final A a, final B b) {
+		if (debug >= MESSAGES || bufferTrace) print(f.apply(a, b));
 	}
 	
 	static public final void printError(Throwable e) {
 		if (debug >= ERRORS) e.printStackTrace();
+		if (bufferTrace) buffer(e);
 	}
 	
 	static public final void printTrace(Object s) {
 		if (debug >= ERRORS) System.out.println(s);
+		if (bufferTrace) buffer(s);
+	}
+	
+	/** Like {@link #printTrace(Object)}, but {@code s} is only invoked when tracing, see {@link #isTracing()}. */
+	static public final void printTrace(final Supplier<?> s) {
+		if (isTracing()) printTrace(s.get());
+	}
+	
+	/** Like {@link #printTrace(Supplier)}, for messages about {@code a}: a non-capturing lambda or method reference
+	 * for {@code f} is a constant, so that nothing is allocated when not tracing. */
+	static public final <A> void printTrace(final Function<A, ?> f, final A a) {
+		if (isTracing()) printTrace(f.apply(a));
+	}
+	
+	/** Like {@link #printTrace(Function, Object)}, for messages about {@code a} and {@code b}. */
+	static public final <A, B> void printTrace(final BiFunction<A, B, ?> f, final A a, final B b) {
+		if (isTracing()) printTrace(f.apply(a, b));
 	}
 	
 	static public final void print(Object s, Throwable e) {
@@ -60,6 +111,47 @@ public class JythonDev
 		} else if (debug >= MESSAGES) {
 			System.out.println(s.toString() + " :: " + e.getMessage());
 		}
+		if (bufferTrace) buffer(s.toString() + " :: " + e);
+	}
+	
+	/** Like {@link #print(Object, Throwable)}, but {@code s} is only invoked when the message is printed or buffered. */
+	static public final void print(final Supplier<?> s, final Throwable e) {
+		if (debug >= MESSAGES || bufferTrace) print(s.get(), e);
+	}
+	
+	/** @return Whether trace messages are printed or buffered, to guard trace code that is more than building a message. */
+	static public final boolean isTracing() {
+		return debug >= ERRORS || bufferTrace;
+	}
+	
+	static private final void buffer(final Object s) {
+		final String entry = System.currentTimeMillis() + " [" + Thread.currentThread().getName() + "] " + s;
+		synchronized (JythonDev.class) {
+			traceBuffer[traceNext] = entry;
+			traceNext = (traceNext + 1) % traceBuffer.length;
+			if (0 == traceNext) traceFull = true;
+		}
+	}
+	
+	/** Set the number of trace messages to keep, discarding those buffered so far. */
+	static public synchronized final void setTraceBufferSize(final int size) {
+		traceBuffer = new String[Math.max(1, size)];
+		traceNext = 0;
+		traceFull = false;
+	}
+	
+	/** @return The buffered trace messages, oldest first. */
+	static public synchronized final List<String> dumpTrace() {
+		final List<String> entries = new ArrayList<>(traceFull ? traceBuffer.length : traceNext);
+		if (traceFull)
+			for (int i = traceNext; i < traceBuffer.length; ++i) entries.add(traceBuffer[i]);
+		for (int i = 0; i < traceNext; ++i) entries.add(traceBuffer[i]);
+		return entries;
+	}
+	
+	/** Print the buffered trace messages, oldest first. */
+	static public final void dumpTrace(final PrintStream out) {
+		for (final String entry : dumpTrace()) out.println(entry);
 	}
 
 }
@@ -29,16 +29,18 @@
 package org.scijava.plugins.scripteditor.jython;
 
 import org.fife.rsta.ac.AbstractLanguageSupport;
-import org.fife.ui.autocomplete.AutoCompletion;
-import org.fife.ui.autocomplete.CompletionProvider;
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 import org.scijava.Priority;
+import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.ui.swing.script.LanguageSupportPlugin;
 import org.scijava.ui.swing.script.LanguageSupportService;
 
 /**
  * {@link LanguageSupportPlugin} for the jython language.
+ * 
+ * A single instance serves all text areas: each gets a {@link JythonSession} from the {@link JythonAnalysisService}
+ * when installed, released when uninstalled.
  *
  * @author Albert Cardona
  * 
@@ -48,8 +50,11 @@ import org.scijava.ui.swing.script.LanguageSupportService;
 public class JythonLanguageSupportPlugin extends  AbstractLanguageSupport implements LanguageSupportPlugin
 {
 	
-	private AutoCompletion ac;
-	private RSyntaxTextArea text_area;
+	@Parameter(required = false)
+	private JythonAnalysisService analysis;
+	
+	/** Whether {@link #analysis} was created here, without a SciJava context, to be disposed of once no text area uses it. */
+	private boolean ownsAnalysis = false;
 	
 	public JythonLanguageSupportPlugin() {
 		setAutoCompleteEnabled(true);
@@ -61,30 +66,39 @@ public class JythonLanguageSupportPlugin extends  AbstractLanguageSupport implem
 	public String getLanguageName() {
 		return "Python (Jython)";
 	}
+	
+	private synchronized JythonAnalysisService analysis() {
+		if (null == this.analysis) {
+			// Not created by a SciJava context
+			final DefaultJythonAnalysisService service = new DefaultJythonAnalysisService();
+			service.initialize();
+			this.analysis = service;
+			this.ownsAnalysis = true;
+		}
+		return this.analysis;
+	}
 
 	@Override
 	public void install(final RSyntaxTextArea textArea) {
-		this.text_area = textArea;
-		this.ac = this.createAutoCompletion(null);
-		this.ac.setParameterAssistanceEnabled(true);
-		this.ac.install(textArea);
+		final JythonSession session = analysis().openSession(textArea);
+		session.getAutoCompletion().install(textArea);
 		// store upstream
-		super.installImpl(textArea, this.ac);
+		super.installImpl(textArea, session.getAutoCompletion());
 	}
 
 	@Override
 	public void uninstall(final RSyntaxTextArea textArea) {
-		if (textArea == this.text_area) {
-			super.uninstallImpl(textArea); // will call this.acp.uninstall();
+		super.uninstallImpl(textArea); // will call uninstall() on the AutoCompletion of the textArea
+		synchronized (this) {
+			if (null == this.analysis) return;
+			this.analysis.closeSession(textArea);
+			if (this.ownsAnalysis && this.analysis.getSessions().isEmpty()) {
+				// Shut down its pool; another will be created for the next text area
+				this.analysis.dispose();
+				this.analysis = null;
+				this.ownsAnalysis = false;
+			}
 		}
 	}
-	
-	/**
-	 * Ignores the argument.
-	 */
-	@Override
-	protected AutoCompletion createAutoCompletion(CompletionProvider p) {
-		 return new JythonAutoCompletion(new JythonAutocompletionProvider(text_area, new JythonImportFormat()));
-	}
 
 }
@@ -30,10 +30,20 @@ package org.scijava.plugins.scripteditor.jython;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 import org.antlr.runtime.tree.CommonTree;
@@ -70,28 +80,403 @@ import org.python.core.PyFloat;
 import org.python.core.PyInteger;
 import org.python.core.PyObject;
 import org.python.indexer.types.NModuleType;
+import org.scijava.plugins.scripteditor.jython.CompletionMetrics.Counter;
+import org.scijava.plugins.scripteditor.jython.CompletionMetrics.Phase;
 import org.scijava.ui.swing.script.autocompletion.CompletionText;
 
 public class JythonScriptParser
 {	
+	/**
+	 * Whether to parse the body of a function only when first needed: when the caret is within it
+	 * (see {@link Scope#getLast()}), when its names are looked up, or when its return type is needed.
+	 * Its signature, and for methods the completions of its first argument (e.g. "self"), are recorded up front.
+	 */
+	static public boolean LAZY_FUNCTION_BODIES = true;
+	
+	/** The number of recent parses to keep, to reuse the syntax trees of the top-level statements they share with the code being parsed. */
+	static public int MAX_RECENT_PARSES = 4;
+	
+	/** Most recent first. */
+	static private final LinkedList<Parse> recentParses = new LinkedList<>();
+	
+	/**
+	 * Code with at least this many lines is parsed one top-level statement at a time, concurrently, by the calling thread
+	 * together with the {@link #parsePool}, unless it has "from __future__" imports, which change how the statements that follow are parsed.
+	 */
+	static public int PARALLEL_PARSE_MIN_LINES = 1000;
+	
+	/**
+	 * The pool on which to parse top-level statements concurrently: that of a {@link JythonAnalysisService}, see {@link #usePool(ForkJoinPool)},
+	 * or else the common pool. Like the caches of parsed code, there is one per JVM, for all SciJava contexts.
+	 */
+	static private volatile ForkJoinPool parsePool = ForkJoinPool.commonPool();
+	
+	/**
+	 * Parse concurrently on {@code pool}, unless the pool of another service, e.g. of another SciJava context, is in use.
+	 * 
+	 * @param pool
+	 * @return Whether {@code pool} is the one in use.
+	 */
+	static synchronized boolean usePool(final ForkJoinPool pool) {
+		if (pool != parsePool && ForkJoinPool.commonPool() != parsePool && !parsePool.isShutdown()) return false;
+		parsePool = pool;
+		return true;
+	}
+	
+	/**
+	 * Stop parsing on {@code pool}, e.g. when its service is disposed, and go back to the common pool;
+	 * unless another pool is in use, which is left as is.
+	 * 
+	 * @param pool
+	 */
+	static synchronized void releasePool(final ForkJoinPool pool) {
+		if (pool == parsePool) parsePool = ForkJoinPool.commonPool();
+	}
+	
+	/** The number of top-level statements to keep parsed on their own, for code with errors. */
+	static public int MAX_PARSED_SEGMENTS = 1000;
+	
+	/** Top-level statements parsed on their own, by their code; null for those with errors. Least recently used first. */
+	static private final Map<String, List<PythonTree>> parsedSegments = new LinkedHashMap<String, List<PythonTree>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, List<PythonTree>> eldest) {
+			return size() > MAX_PARSED_SEGMENTS;
+		}
+	};
+	
+	/**
+	 * The frozen {@link Scope} of some code, and its top-level statements.
+	 * Only the statements, which are syntax trees, are reused by later parses: the scopes are not,
+	 * given that those of a parse resolve names, e.g. of function bodies parsed lazily, against the code of that parse.
+	 */
+	static private final class Parse {
+		final String code;
+		final Scope scope;
+		/** The line at which each top-level statement starts. */
+		final int[] lines;
+		final List<TopLevelStatement> statements;
+		/** The types of the nodes of each top-level statement, inferred on each lookup. */
+		final ExpressionTypes types;
+		
+		Parse(final String code, final Scope scope, final int[] lines, final List<TopLevelStatement> statements, final ExpressionTypes types) {
+			this.code = code;
+			this.scope = scope;
+			this.lines = lines;
+			this.statements = statements;
+			this.types = types;
+		}
+	}
+	
+	/** A top-level statement to add to the top-level scope. */
+	static private final class TopLevelStatement {
+		/** The line at which it starts. */
+		final int line;
+		/** Null when the statement has errors. */
+		final PythonTree node;
+		/** The offset, within the whole code, of the code that was parsed into the node. */
+		final int offset;
+		/** The code of the statement, to outline with {@link OutlineParser} when it has errors. */
+		final String outline;
+		
+		TopLevelStatement(final int line, final PythonTree node, final int offset, final String outline) {
+			this.line = line;
+			this.node = node;
+			this.offset = offset;
+			this.outline = outline;
+		}
+	}
+	
 	/**
 	 * Parse valid jython code.
 	 * 
+	 * The returned {@link Scope} is frozen (see {@link Scope#freeze()}) and may be shared:
+	 * parsing the same code again returns the same instance, and parsing code that shares
+	 * its beginning with a recently parsed one reuses the syntax trees of the unchanged top-level statements.
+	 * 
 	 * @param code
 	 * 
-	 * @return The top-level {@link Scope}, which is empty (see {@link Scope#isEmpty()}) when the code has errors and can't be parsed by {@link ParserFacade#parse(String, CompileMode, String, CompilerFlags)}.
+	 * @return The top-level {@link Scope}. When the code has errors and can't be parsed as a whole by {@link ParserFacade#parse(String, CompileMode, String, CompilerFlags)},
+	 *         each top-level statement is parsed on its own (see {@link #parseSegments(String, boolean)}), and those with errors are outlined with {@link OutlineParser}.
 	 */
 	static public Scope parseAST(final String code) {
 		// The code includes from beginning of the file until the point at which an autocompletion is requested.
 		// Therefore, remove the last line, which would fail to parse because it is incomplete
+		final Parse parse = parse(code);
+		return null == parse ? OutlineParser.parse(code) : parse.scope;
+	}
+	
+	/**
+	 * The types of the expressions in the code, e.g. to find out what is before a dot, see {@link ExpressionTypes#typeAt(int)}.
+	 * Parses the code if not parsed recently, like {@link #parseAST(String)}.
+	 * 
+	 * @param code
+	 * @return The {@link ExpressionTypes} of the code, or null if it can't be parsed at all.
+	 */
+	static public ExpressionTypes getExpressionTypes(final String code) {
+		final Parse parse = parse(code);
+		return null == parse ? null : parse.types;
+	}
+	
+	/** @return The recent parse of the code, or a new one; or null if the code can't be parsed even one top-level statement at a time. */
+	static private Parse parse(final String code) {
+		final Object event = FlightRecorderEvents.begin(FlightRecorderEvents.Type.PARSE);
+		final Parse previous = findMostSimilarParse(code);
+		if (null != previous && previous.code.equals(code)) {
+			CompletionMetrics.count(Counter.PARSE_HITS);
+			if (null != event) FlightRecorderEvents.commit(event, code.length(), previous.lines.length, "hit");
+			return previous;
+		}
+		CompletionMetrics.count(Counter.PARSE_MISSES);
+		final long start = CompletionMetrics.start();
+		Parse parse = null;
 		try {
-			final mod m = ParserFacade.parse(code, CompileMode.exec, "<none>", new CompilerFlags());
-			final Scope scope = parseNode(m.getChildren(), null, null);
-			return null == scope ? new Scope(null) : scope;
-		} catch (Throwable t) {
-			JythonDev.printError(t);
-			return new Scope(null);
+			if (parsePool.getParallelism() > 1 && countLines(code) >= PARALLEL_PARSE_MIN_LINES && !code.contains("__future__")) {
+				parse = parseSegments(code, true);
+			}
+			if (null == parse) {
+				parse = parseTopLevel(code, parseStatements(code, previous));
+			}
+		} catch (Exception e) {
+			JythonDev.printTrace(x -> "Can't parse the code as a whole: " + x, e);
+			try {
+				parse = parseSegments(code, false);
+			} catch (Exception e2) {
+				JythonDev.printError(e2);
+				CompletionMetrics.count(Counter.PARSE_FAILURES);
+				CompletionMetrics.record(Phase.PARSE, start);
+				if (null != event) FlightRecorderEvents.commit(event, code.length(), 0, "failure");
+				return null;
+			}
+		}
+		CompletionMetrics.record(Phase.PARSE, start);
+		if (null != event) FlightRecorderEvents.commit(event, code.length(), parse.lines.length, "miss");
+		synchronized (recentParses) {
+			recentParses.addFirst(parse);
+			while (recentParses.size() > Math.max(1, MAX_RECENT_PARSES)) recentParses.removeLast();
+		}
+		return parse;
+	}
+	
+	/**
+	 * Parse each top-level statement on its own, so that an error in one doesn't prevent parsing
+	 * the others, and so that they can be parsed concurrently. Statements with errors are outlined with {@link OutlineParser}.
+	 * Each statement is parsed only once while its code is unchanged (see {@link #MAX_PARSED_SEGMENTS}),
+	 * so that a typo costs reparsing only the statement that contains it.
+	 * Either way, the statements are added to the top-level scope one at a time in source order,
+	 * as when parsing the code as a whole.
+	 * 
+	 * @param code Code that can't be parsed as a whole, or that is large.
+	 * @param concurrently Whether to parse the statements also on the {@link #parsePool}, see {@link #parseConcurrently(String[])}, for code that is expected to be valid.
+	 * @return The new {@link Parse}, with a frozen {@link Scope}; or null when parsing concurrently and any statement has errors,
+	 *         given that the code may then be valid but split in the wrong places, or else should be split as code with errors.
+	 */
+	static private Parse parseSegments(final String code, final boolean concurrently) {
+		final int[] segmentLines = OutlineParser.topLevelStatementLines(code, !concurrently);
+		// The offset at which each line starts, the first being line 1
+		final List<Integer> lineStarts = new ArrayList<>();
+		lineStarts.add(0); // unused
+		lineStarts.add(0);
+		for (int i = code.indexOf('\n'); -1 != i; i = code.indexOf('\n', i + 1))
+			lineStarts.add(i + 1);
+		final String[] segments = new String[segmentLines.length];
+		for (int k=0; k<segmentLines.length; ++k) {
+			final int start = lineStarts.get(segmentLines[k]),
+					  end = k + 1 < segmentLines.length ? lineStarts.get(segmentLines[k + 1]) : code.length();
+			segments[k] = code.substring(start, end);
+		}
+		final List<List<PythonTree>> parsed = concurrently ?
+				parseConcurrently(segments)
+				: Arrays.stream(segments).map(JythonScriptParser::parseSegment).collect(Collectors.toList());
+		if (concurrently && parsed.contains(null)) return null;
+		final List<TopLevelStatement> statements = new ArrayList<>();
+		int errors = 0;
+		for (int k=0; k<segmentLines.length; ++k) {
+			final int firstLine = segmentLines[k];
+			final int offset = lineStarts.get(firstLine);
+			final List<PythonTree> nodes = parsed.get(k);
+			if (null == nodes) {
+				++errors;
+				statements.add(new TopLevelStatement(firstLine, null, offset, segments[k]));
+				continue;
+			}
+			for (final PythonTree node: nodes)
+				statements.add(new TopLevelStatement(firstLine - 1 + node.getLine(), node, offset, null));
+		}
+		CompletionMetrics.count(Counter.SEGMENT_ERRORS, errors);
+		if (errors > 0) JythonDev.printTrace((e, s) -> "Outlined " + e + " of " + s.length + " top-level statements with errors", errors, segmentLines);
+		return parseTopLevel(code, statements);
+	}
+	
+	/**
+	 * Parse the segments on the {@link #parsePool} and on the calling thread at once, each by whichever thread takes it first.
+	 * The calling thread, e.g. the event dispatch thread, waits then only for the segments that the pool is parsing, and not
+	 * for the pool to get to them: when the pool is busy, e.g. indexing class names, the calling thread parses them all.
+	 * 
+	 * @return The statements in each segment, null for those with errors.
+	 */
+	static private List<List<PythonTree>> parseConcurrently(final String[] segments) {
+		final AtomicReferenceArray<List<PythonTree>> parsed = new AtomicReferenceArray<>(segments.length);
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(segments.length);
+		final Runnable parser = () -> {
+			for (int k = next.getAndIncrement(); k < segments.length; k = next.getAndIncrement()) {
+				try {
+					parsed.set(k, parseSegment(segments[k]));
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+		final ForkJoinPool pool = parsePool;
+		final List<ForkJoinTask<?>> helpers = new ArrayList<>();
+		for (int i=0; i<pool.getParallelism() && i + 1 < segments.length; ++i)
+			helpers.add(pool.submit(parser));
+		parser.run();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
 		}
+		if (interrupted) Thread.currentThread().interrupt();
+		for (final ForkJoinTask<?> helper: helpers)
+			helper.cancel(false); // those the pool didn't get to
+		final List<List<PythonTree>> statements = new ArrayList<>(segments.length);
+		for (int k=0; k<segments.length; ++k)
+			statements.add(parsed.get(k));
+		return statements;
+	}
+	
+	/** @return The statements in the segment of code, or null if it has errors. */
+	static private List<PythonTree> parseSegment(final String segment) {
+		synchronized (parsedSegments) {
+			if (parsedSegments.containsKey(segment)) {
+				CompletionMetrics.count(Counter.SEGMENT_HITS);
+				return parsedSegments.get(segment);
+			}
+		}
+		CompletionMetrics.count(Counter.SEGMENT_MISSES);
+		List<PythonTree> statements;
+		try {
+			final mod m = ParserFacade.parse(segment, CompileMode.exec, "<none>", new CompilerFlags());
+			statements = null == m.getChildren() ? Collections.emptyList() : m.getChildren();
+		} catch (Exception e) {
+			statements = null;
+		}
+		synchronized (parsedSegments) {
+			parsedSegments.put(segment, statements);
+		}
+		return statements;
+	}
+	
+	/** @return The recent parse whose code shares the longest beginning with the given code, or null if none. */
+	static private Parse findMostSimilarParse(final String code) {
+		synchronized (recentParses) {
+			Parse best = null;
+			int bestLength = -1;
+			for (final Parse parse: recentParses) {
+				if (parse.code.equals(code)) return parse;
+				final int length = commonPrefixLength(parse.code, code);
+				if (length > bestLength) {
+					best = parse;
+					bestLength = length;
+				}
+			}
+			return best;
+		}
+	}
+	
+	static private int countLines(final String code) {
+		int n = 1;
+		for (int i = code.indexOf('\n'); -1 != i; i = code.indexOf('\n', i + 1)) ++n;
+		return n;
+	}
+	
+	static private int commonPrefixLength(final String a, final String b) {
+		final int n = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < n && a.charAt(i) == b.charAt(i)) ++i;
+		return i;
+	}
+	
+	/**
+	 * Parse the code as a whole, except for the leading top-level statements that are unchanged
+	 * relative to the previous parse, whose syntax trees are reused: only the code after them is parsed.
+	 * 
+	 * @param code
+	 * @param previous A recent parse, or null.
+	 * @return The top-level statements; throws like {@link ParserFacade} when the code after the reused ones has errors.
+	 */
+	static private List<TopLevelStatement> parseStatements(final String code, final Parse previous) {
+		// With "from __future__" imports, the statements that follow must be parsed together with them
+		final int reusable = null == previous || code.contains("__future__") ? 0 : countReusableStatements(previous, code);
+		final List<TopLevelStatement> statements = new ArrayList<>();
+		int firstLine = 1,
+		    offset = 0;
+		if (reusable > 0) {
+			statements.addAll(previous.statements.subList(0, reusable));
+			firstLine = previous.lines[reusable];
+			for (int line = 1; line < firstLine; ++line)
+				offset = code.indexOf('\n', offset) + 1;
+		}
+		final mod m = ParserFacade.parse(0 == offset ? code : code.substring(offset), CompileMode.exec, "<none>", new CompilerFlags());
+		if (null != m.getChildren()) {
+			for (final PythonTree node: m.getChildren())
+				statements.add(new TopLevelStatement(firstLine - 1 + node.getLine(), node, offset, null));
+		}
+		CompletionMetrics.count(Counter.REUSED_STATEMENTS, reusable);
+		CompletionMetrics.count(Counter.PARSED_STATEMENTS, statements.size() - reusable);
+		if (reusable > 0) JythonDev.printTrace((r, total) -> "Reused the syntax trees of " + r + " of " + total + " top-level statements", reusable, statements.size());
+		return statements;
+	}
+	
+	/**
+	 * A top-level statement is unchanged when the statement after it starts within the lines
+	 * that the previous code and the new code have in common, given that the lines before decide where it ends.
+	 * 
+	 * @return The number of leading top-level statements of the previous parse whose syntax trees can be reused,
+	 *         none of them outlined for having errors, and the last one not sharing its line with the statement after it.
+	 */
+	static private int countReusableStatements(final Parse previous, final String code) {
+		final int prefixLength = commonPrefixLength(previous.code, code);
+		int commonLines = 0; // complete lines, with their line break
+		for (int k=0; k<prefixLength; ++k)
+			if ('\n' == code.charAt(k)) ++commonLines;
+		int i = 0;
+		while (i + 1 < previous.lines.length
+				&& previous.lines[i + 1] <= commonLines
+				&& null != previous.statements.get(i).node)
+			++i;
+		while (i > 0 && previous.lines[i - 1] == previous.lines[i]) --i;
+		return i;
+	}
+	
+	/**
+	 * Parse each top-level statement, in source order, into a new top-level {@link Scope}.
+	 * 
+	 * @param code The code that was parsed into the statements.
+	 * @param statements The top-level statements.
+	 * @return The new {@link Parse}, with a frozen {@link Scope}.
+	 */
+	static private Parse parseTopLevel(final String code, final List<TopLevelStatement> statements) {
+		final Scope scope = new Scope(null);
+		final int n = statements.size();
+		final int[] lines = new int[n];
+		final List<ExpressionTypes.Statement> types = new ArrayList<>(n);
+		for (int i=0; i<n; ++i) {
+			final TopLevelStatement statement = statements.get(i);
+			lines[i] = statement.line;
+			if (null == statement.node)
+				OutlineParser.parseInto(statement.outline, scope);
+			else
+				parseNode(scope, Collections.singletonList(statement.node), null);
+			types.add(new ExpressionTypes.Statement(statement.node, statement.offset, scope));
+		}
+		return new Parse(code, scope.freeze(), lines, statements, new ExpressionTypes(types));
 	}
 
 	/**
@@ -113,14 +498,14 @@ public class JythonScriptParser
 	static public void parseNode(final Scope scope, final List<PythonTree> children, final String className) {
 		
 		for (final PythonTree child : children) {
-			JythonDev.printTrace(child.getClass());
+			JythonDev.printTrace(Object::getClass, child);
 			
 			if (child instanceof ImportFrom)
-				scope.imports.putAll(parseImportFromStatement( (ImportFrom)child ));
+				scope.putImports(parseImportFromStatement( (ImportFrom)child ));
 			else if (child instanceof Import)
-				scope.imports.putAll(parseImportStatement((Import)child));
+				scope.putImports(parseImportStatement((Import)child));
 			else if (child instanceof Assign)
-				scope.vars.putAll(parseAssignStatement( (Assign)child, scope ));
+				scope.putVars(parseAssignStatement( (Assign)child, scope ));
 			else if (child instanceof FunctionDef)
 				parseFunctionDef((FunctionDef)child, scope);
 			else if (child instanceof ClassDef)
@@ -132,15 +517,15 @@ public class JythonScriptParser
 				// no new scope in if/for/while/with/try/ statements in python
 				parseNode(scope, child.getChildren(), null);
 			else
-				JythonDev.printTrace("IGNORING child: " + child + " -- " + (null != child.getChildren() ?
-						String.join("::", child.getChildren().stream().map(c -> c.toString()).collect(Collectors.toList()))
-						: ""));
+				JythonDev.printTrace(c -> "IGNORING child: " + c + " -- " + (null != c.getChildren() ?
+						String.join("::", c.getChildren().stream().map(PythonTree::toString).collect(Collectors.toList()))
+						: ""), child);
 		}
 	}
 	
 	static public void parseExpr(final Expr child, final Scope scope) {
 		// child.getText() shows child is the base
-		JythonDev.printTrace("Expr: " + child.getText() + ", " + child.getInternalValue() + ", " + child.getValue() + ", children: " + String.join(", ", child.getChildren().stream().map(PythonTree::toString).collect(Collectors.toList())));
+		JythonDev.printTrace(c -> "Expr: " + c.getText() + ", " + c.getInternalValue() + ", " + c.getValue() + ", children: " + String.join(", ", c.getChildren().stream().map(PythonTree::toString).collect(Collectors.toList())), child);
 	}
 
 	/**
@@ -171,8 +556,8 @@ public class JythonScriptParser
 		return classes;
 	}
 	
-	static private DotAutocompletions maybeStaticToDot(final PythonTree node, final DotAutocompletions da) {
-		JythonDev.printTrace("children count:" + node.getChildCount() + ", children: " + (null != node.getChildren() ? node.getChildren().stream().map(c -> c.toString()).collect(Collectors.toList()) : ""));
+	static DotAutocompletions maybeStaticToDot(final PythonTree node, final DotAutocompletions da) {
+		JythonDev.printTrace(n -> "children count:" + n.getChildCount() + ", children: " + (null != n.getChildren() ? n.getChildren().stream().map(PythonTree::toString).collect(Collectors.toList()) : ""), node);
 		if (node.getChildCount() > 0 && da instanceof StaticDotAutocompletions) {
 			// It's a right expression (a constructor invocation assigned to a variable on the left) so the left is an instance of the class
 			return new VarDotAutocompletions(da.getClassname());
@@ -199,7 +584,7 @@ public class JythonScriptParser
 			for (int i=0; i<right.getChildren().size(); ++i) {
 				final CommonTree ct = left.getChildren().get(i).getNode();
 				if (null == ct) {
-					JythonDev.printTrace("null for left: '" + left + "'" + " at child node " + i);
+					JythonDev.printTrace((l, index) -> "null for left: '" + l + "'" + " at child node " + index, left, i);
 					continue;
 				}
 				final String name = ct.toString();
@@ -225,23 +610,11 @@ public class JythonScriptParser
 				leftn = attr.getValue();
 			}
 			if (leftn instanceof Name) {
-				String varName = ((Name)leftn).getInternalId();
-				Collections.reverse(attrs);
-				Scope scopeC = scope;
-				for (final Attribute attr: attrs) {
-					final DotAutocompletions ac = scopeC.find(varName, DotAutocompletions.EMPTY); // in the first iteration it finds the completions for the base Name
-					if (ac instanceof ClassDotAutocompletions) {
-						final ClassDotAutocompletions cda = (ClassDotAutocompletions)ac;
-						varName = attr.getInternalAttrName().getInternalId(); // in the first iteration becomes the name of the first Attribute
-						// Add the name of the Attribute to the list of expansions for the prior varName
-						scopeC = cda.scope; // prepare scope for next iteration
-						//scopeC.vars.put(varName, cda); // Is this needed? I think it isn't
-						cda.put(new CompletionText(varName)); // add varName (e.g. "width") as a possible expansion for the prior varName (e.g. "self").
-					} else {
-						// Don't know how to handle e.g. self.doThis().that = 10 because for "doThis()" there would be a class return type stored 
-						break;
-					}
-				}
+				final List<String> names = new ArrayList<>();
+				names.add(((Name)leftn).getInternalId());
+				for (int i = attrs.size() -1; i > -1; --i)
+					names.add(attrs.get(i).getInternalAttrName().getInternalId());
+				ClassDotAutocompletions.assignAttribute(names, scope);
 				return assigns;
 			}
 		}
@@ -271,14 +644,114 @@ public class JythonScriptParser
 		// Add arguments to the scope -- must be done BEFORE parseNode
 		for (final String arg: argumentNames) {
 			// Empty. For the first argument ("self" or similar) will be replaced later if it's part of a class definition.
-			fn_scope.vars.put(arg, new ClassDotAutocompletions("<unknown>", Collections.emptyList(), Collections.emptyList(), 
+			fn_scope.putVar(arg, new ClassDotAutocompletions(ClassDotAutocompletions.UNKNOWN, Collections.emptyList(), Collections.emptyList(), 
 					new ArrayList<CompletionText>(), fn_scope));
 		}
+		final List<Return> returns = new ArrayList<>();
+		collectReturns(children, returns);
+		if (LAZY_FUNCTION_BODIES) {
+			// Record the signature and the return statements now, and parse the body when first needed
+			fn_scope.defer(() -> parseNode(fn_scope, children, null));
+			parent.putVar(name, new DefVarDotAutocompletions(name, () -> inferReturned(returns, fn_scope), argumentNames, fn_scope));
+			return;
+		}
 		parseNode(fn_scope, fn.getChildren(), null);
 		// Get the return type, if any
-		final PythonTree last = fn.getChildren().get(fn.getChildCount() -1);
-		final String returnClassName = last instanceof Return ? parseRight(last.getChildren().get(0), fn_scope).toString() : null;
-		parent.vars.put(name, new DefVarDotAutocompletions(name, returnClassName, argumentNames, fn_scope));
+		final DotAutocompletions returned = inferReturned(returns, fn_scope);
+		parent.putVar(name, new DefVarDotAutocompletions(name, () -> returned, argumentNames, fn_scope));
+	}
+	
+	/** Collect the return statements of a function body, but not those of functions and classes defined within it. */
+	static private void collectReturns(final List<PythonTree> nodes, final List<Return> returns) {
+		if (null == nodes) return;
+		for (final PythonTree node: nodes) {
+			if (node instanceof Return) returns.add((Return)node);
+			else if (!(node instanceof FunctionDef || node instanceof ClassDef)) collectReturns(node.getChildren(), returns);
+		}
+	}
+	
+	/**
+	 * @param returns The return statements of a function.
+	 * @param fn_scope The scope of the function body.
+	 * @return What all the return statements whose value is known return, see {@link #commonReturned(List)}.
+	 */
+	static private DotAutocompletions inferReturned(final List<Return> returns, final Scope fn_scope) {
+		final List<DotAutocompletions> returned = new ArrayList<>();
+		for (final Return r: returns) {
+			if (null == r.getChildren() || r.getChildren().isEmpty()) continue; // "return" alone
+			final PythonTree value = r.getChildren().get(0);
+			returned.add(maybeStaticToDot(value, parseRight(value, fn_scope)));
+		}
+		return commonReturned(returned);
+	}
+	
+	/**
+	 * @param returned What each return statement of a function returns, with {@link DotAutocompletions#EMPTY} for unknown values, which are ignored.
+	 * @return The python class that all known values are instances of, if all are of the same python class;
+	 *         or the most specific java type that all are, see {@link #commonClassName(List)};
+	 *         or null if none are known, or if they are of python and java classes alike.
+	 */
+	static DotAutocompletions commonReturned(final List<DotAutocompletions> returned) {
+		ClassDotAutocompletions pyClass = null;
+		final List<String> classNames = new ArrayList<>();
+		for (DotAutocompletions da: returned) {
+			if (da instanceof DefVarDotAutocompletions && !(da instanceof ClassDotAutocompletions))
+				da = ((DefVarDotAutocompletions)da).getReturned(); // e.g. "return createVolume()"
+			if (da instanceof ClassDotAutocompletions && !ClassDotAutocompletions.UNKNOWN.equals(((ClassDotAutocompletions)da).fnName)) {
+				if (null != pyClass && da != pyClass) return null; // a python class can't be summarized by a common java class
+				pyClass = (ClassDotAutocompletions)da;
+			} else if (null != da && null != da.getClassname()) {
+				classNames.add(da.getClassname());
+			}
+		}
+		if (null != pyClass) return classNames.isEmpty() ? pyClass : null;
+		final String className = commonClassName(classNames);
+		return null == className ? null : new VarDotAutocompletions(className);
+	}
+	
+	/**
+	 * Considers superclasses and interfaces alike: e.g. for a java.util.ArrayList and a java.util.HashSet, java.util.AbstractCollection,
+	 * and for a java.util.List and a java.util.Set, java.util.Collection. Interfaces without methods, like java.io.Serializable,
+	 * count only when no other type is common to all.
+	 * 
+	 * @param classNames Names of java classes.
+	 * @return The most specific type that all the given classes are, extend or implement; or null if there is none but java.lang.Object,
+	 *         or if there are more than one equally specific, or if none are given or some can't be loaded.
+	 */
+	static String commonClassName(final List<String> classNames) {
+		if (classNames.isEmpty()) return null;
+		final Set<Class<?>> common = new LinkedHashSet<>();
+		try {
+			addSupertypes(Class.forName(classNames.get(0)), common);
+			for (final String className: classNames.subList(1, classNames.size())) {
+				final Class<?> c = Class.forName(className);
+				common.removeIf(s -> !s.isAssignableFrom(c));
+			}
+		} catch (final ClassNotFoundException e) {
+			JythonDev.printTrace(names -> "Different return types: " + names, classNames);
+			return null;
+		}
+		common.remove(Object.class);
+		// The most specific: those that no other common type is a subtype of
+		final List<Class<?>> specific = common.stream()
+				.filter(s -> common.stream().noneMatch(t -> t != s && s.isAssignableFrom(t)))
+				.collect(Collectors.toList());
+		if (specific.size() > 1) {
+			// Prefer a class to the interfaces it doesn't implement, and then interfaces with methods to marker interfaces
+			final List<Class<?>> classes = specific.stream().filter(s -> !s.isInterface()).collect(Collectors.toList());
+			final List<Class<?>> withMethods = specific.stream().filter(s -> s.getMethods().length > 0).collect(Collectors.toList());
+			if (1 == classes.size()) return classes.get(0).getName();
+			if (1 == withMethods.size()) return withMethods.get(0).getName();
+		}
+		return 1 == specific.size() ? specific.get(0).getName() : null;
+	}
+	
+	/** Add {@code c} and all the classes and interfaces it extends or implements to {@code supertypes}. */
+	static private void addSupertypes(final Class<?> c, final Set<Class<?>> supertypes) {
+		if (null == c || !supertypes.add(c)) return;
+		addSupertypes(c.getSuperclass(), supertypes);
+		for (final Class<?> i: c.getInterfaces())
+			addSupertypes(i, supertypes);
 	}
 	
 	/**
@@ -303,16 +776,12 @@ public class JythonScriptParser
 		}
 		// Superclasses
 		final List<String> superclassNames = new ArrayList<>();
-		for (final expr e: c.getInternalBases()) {
-			final DotAutocompletions da = parent.find(e.getText(), null);
-			if (null == da || null == da.getClassname())
-				JythonDev.print("Could not find completions and className for " + e.getText());
-			else
-				superclassNames.add(da.getClassname());
-		}
+		final Map<String, ClassDotAutocompletions> localSuperclasses = new HashMap<>();
+		for (final expr e: c.getInternalBases())
+			ClassDotAutocompletions.addSuperclass(e.getText(), parent, superclassNames, localSuperclasses);
 		// Search for the constructor __init__ if any to get the constructor parameters
 		final List<String> argumentNames = new ArrayList<>();
-		final ClassDotAutocompletions cda = new ClassDotAutocompletions(pyClassname, superclassNames, argumentNames, classDotAutocompletions, class_scope);
+		final ClassDotAutocompletions cda = new ClassDotAutocompletions(pyClassname, superclassNames, localSuperclasses, argumentNames, classDotAutocompletions, class_scope);
 		for (final PythonTree child: c.getChildren()) {
 			if (!(child instanceof FunctionDef)) continue;
 			final FunctionDef fn = (FunctionDef)child;
@@ -337,7 +806,25 @@ public class JythonScriptParser
 		}
 		
 		// Add to the parent scope for expansion of the constructor name plus parameters 
-		parent.vars.put(pyClassname, cda);
+		parent.putVar(pyClassname, cda);
+	}
+	
+	/**
+	 * Infer what an expression returns, e.g. the right side of an assignment found by {@link OutlineParser}.
+	 * 
+	 * @param expression A python expression, e.g. "IJ.getImage().getProcessor()".
+	 * @param scope The {@code Scope} where to find the names used in the expression.
+	 * @return The {@code DotAutocompletions} for the returned value, or {@link DotAutocompletions#EMPTY} if the expression can't be parsed.
+	 */
+	static public DotAutocompletions parseExpression(final String expression, final Scope scope) {
+		try {
+			final mod m = ParserFacade.parse(expression.trim(), CompileMode.eval, "<none>", new CompilerFlags());
+			final PythonTree node = m.getChildren().get(0);
+			return maybeStaticToDot(node, parseRight(node, scope));
+		} catch (Throwable t) {
+			JythonDev.printTrace(e -> "Can't parse expression: " + e, expression);
+			return DotAutocompletions.EMPTY;
+		}
 	}
 	
 	/** Discover the class returned by the right statement in an assignment.
@@ -379,16 +866,13 @@ public class JythonScriptParser
 						return new VarDotAutocompletions(m.getReturnType().getName());
 				return new VarDotAutocompletions(c.getField(name).getType().getName());
 			} catch (Exception e) {
-				JythonDev.print("Could not find method or field " + name + " in class " + className, e);
+				JythonDev.print(() -> "Could not find method or field " + name + " in class " + className, e);
 			}
 			// Could also be a python module, e.g. attempting to autocomplete "os.path."
-			try {
-				final NModuleType module = Scope.indexer.loadModule(className + "." + name); // overly expensive: any way to check it exists without loading it?
-				if (null != module)
-					return new StaticDotAutocompletions(className  + "." + name);
-			} catch (Exception e) {
-				JythonDev.printTrace("Not a python module: " + className + "." + name);
-			}
+			final NModuleType module = Scope.loadPythonModule(className + "." + name); // overly expensive: any way to check it exists without loading it?
+			if (null != module)
+				return new StaticDotAutocompletions(className  + "." + name);
+			JythonDev.printTrace((c, member) -> "Not a python module: " + c + "." + member, className, name);
 		}
 		if (right instanceof Call) {
 			// e.g. a method call, in particular the last one in the chain
@@ -425,7 +909,7 @@ public class JythonScriptParser
 			return parseRight(binop.getRight(), scope);
 		}
 		
-		JythonDev.printTrace("Unsupported 'right' is: " + right + " " + (right != null ? right.getClass() : ""));
+		JythonDev.printTrace(r -> "Unsupported 'right' is: " + r + " " + (r != null ? r.getClass() : ""), right);
 		
 		return DotAutocompletions.EMPTY;
 	}
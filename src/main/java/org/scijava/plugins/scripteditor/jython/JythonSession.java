@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+
+/**
+ * The state of jython autocompletion for one text area: its completion provider, with the kind of the last request
+ * and the keystroke trace if recording, and the {@link JythonAutoCompletion} that shows and inserts the completions.
+ * Everything else, such as the parsed code, the python modules and the index of class names, is shared by all sessions:
+ * see {@link JythonAnalysisService}.
+ */
+public class JythonSession
+{
+	private final RSyntaxTextArea textArea;
+	private final JythonAutocompletionProvider provider;
+	private final JythonAutoCompletion autoCompletion;
+	
+	public JythonSession(final RSyntaxTextArea textArea) {
+		this.textArea = textArea;
+		this.provider = new JythonAutocompletionProvider(textArea, new JythonImportFormat());
+		this.autoCompletion = new JythonAutoCompletion(this.provider);
+		this.autoCompletion.setParameterAssistanceEnabled(true);
+	}
+	
+	public RSyntaxTextArea getTextArea() {
+		return this.textArea;
+	}
+	
+	public JythonAutocompletionProvider getProvider() {
+		return this.provider;
+	}
+	
+	public JythonAutoCompletion getAutoCompletion() {
+		return this.autoCompletion;
+	}
+	
+	/** Release the resources of this session, such as the file of its keystroke trace. */
+	public void release() {
+		this.provider.dispose();
+	}
+}
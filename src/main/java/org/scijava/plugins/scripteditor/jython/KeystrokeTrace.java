@@ -0,0 +1,249 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.event.CaretEvent;
+import javax.swing.event.CaretListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Records the edits, caret moves and completion requests of a text area to a file,
+ * to replay them later with {@link KeystrokeTraceReplayer} and reproduce how a session felt.
+ * 
+ * Off unless {@link #directory} is set, e.g. with -Dscijava.jython.trace=/path/to/dir
+ * 
+ * The text is anonymized: the letters and digits within string literals and comments
+ * are replaced with 'x' and '0', whereas the code itself is kept so that completions can be computed as they were.
+ * 
+ * Each line of the file is an event: the milliseconds since the previous event, a tab, a letter for the kind of event,
+ * and its fields separated by tabs, with text escaped (see {@link #escape(String)}):
+ * S text: the whole document, when recording starts or the document is replaced;
+ * I offset text: an insertion;
+ * R offset length: a removal;
+ * C caret: a move of the caret;
+ * Q caret nanoseconds count: a completion request, how long it took, and how many completions it found.
+ */
+public class KeystrokeTrace implements DocumentListener, CaretListener
+{
+	static public final String HEADER = "# jython keystroke trace 1";
+	
+	/** The directory where to write a file for each text area, or null to not record anything. */
+	static public File directory = null == System.getProperty("scijava.jython.trace") ? null : new File(System.getProperty("scijava.jython.trace"));
+	
+	static private final AtomicInteger count = new AtomicInteger();
+	
+	private final JTextComponent textArea;
+	private final BufferedWriter writer;
+	private Document document;
+	private long last = System.currentTimeMillis();
+	
+	private KeystrokeTrace(final JTextComponent textArea, final File file) throws IOException {
+		this.textArea = textArea;
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		this.writer.write(HEADER);
+		this.writer.newLine();
+		textArea.addCaretListener(this);
+		textArea.addPropertyChangeListener("document", e -> attach(textArea.getDocument()));
+		attach(textArea.getDocument());
+	}
+	
+	/**
+	 * Start recording, if a {@link #directory} is set.
+	 * 
+	 * @param textArea
+	 * @return The recorder, or null if not recording.
+	 */
+	static public KeystrokeTrace start(final JTextComponent textArea) {
+		if (null == directory || null == textArea) return null;
+		try {
+			directory.mkdirs();
+			final File file = new File(directory, "jython-trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+					+ "-" + count.incrementAndGet() + ".txt");
+			JythonDev.print(() -> "Recording keystroke trace to " + file);
+			return new KeystrokeTrace(textArea, file);
+		} catch (final Exception e) {
+			JythonDev.print("Could not start recording keystroke trace", e);
+			return null;
+		}
+	}
+	
+	private synchronized void attach(final Document document) {
+		if (null != this.document) this.document.removeDocumentListener(this);
+		this.document = document;
+		if (null == document) return;
+		document.addDocumentListener(this);
+		try {
+			write("S", anonymize(document.getText(0, document.getLength()), ""));
+		} catch (final BadLocationException e) {
+			JythonDev.printError(e);
+		}
+	}
+	
+	@Override
+	public void insertUpdate(final DocumentEvent e) {
+		try {
+			final Document doc = e.getDocument();
+			final int offset = e.getOffset();
+			final Element line = doc.getDefaultRootElement().getElement(doc.getDefaultRootElement().getElementIndex(offset));
+			final String before = doc.getText(line.getStartOffset(), offset - line.getStartOffset());
+			write("I", Integer.toString(offset), anonymize(doc.getText(offset, e.getLength()), before));
+		} catch (final BadLocationException ble) {
+			JythonDev.printError(ble);
+		}
+	}
+	
+	@Override
+	public void removeUpdate(final DocumentEvent e) {
+		write("R", Integer.toString(e.getOffset()), Integer.toString(e.getLength()));
+	}
+	
+	@Override
+	public void changedUpdate(final DocumentEvent e) {} // style changes only
+	
+	@Override
+	public void caretUpdate(final CaretEvent e) {
+		write("C", Integer.toString(e.getDot()));
+	}
+	
+	/**
+	 * Record a completion request, and write out the events so far.
+	 * 
+	 * @param caret
+	 * @param nanos How long it took to find the completions.
+	 * @param completions How many completions were found.
+	 */
+	public void completionRequest(final int caret, final long nanos, final int completions) {
+		write("Q", Integer.toString(caret), Long.toString(nanos), Integer.toString(completions));
+		synchronized (this) {
+			try {
+				this.writer.flush();
+			} catch (final IOException e) {
+				JythonDev.printError(e);
+			}
+		}
+	}
+	
+	/** Stop recording. */
+	public synchronized void stop() {
+		this.textArea.removeCaretListener(this);
+		if (null != this.document) this.document.removeDocumentListener(this);
+		try {
+			this.writer.close();
+		} catch (final IOException e) {
+			JythonDev.printError(e);
+		}
+	}
+	
+	private synchronized void write(final String kind, final String... fields) {
+		try {
+			final long now = System.currentTimeMillis();
+			this.writer.write(Long.toString(now - this.last));
+			this.last = now;
+			this.writer.write('\t');
+			this.writer.write(kind);
+			for (final String field: fields) {
+				this.writer.write('\t');
+				this.writer.write(field);
+			}
+			this.writer.newLine();
+		} catch (final IOException e) {
+			JythonDev.printError(e);
+		}
+	}
+	
+	/**
+	 * Replace letters and digits within string literals and comments with 'x' and '0', and escape the result.
+	 * Whether the text starts within a string or a comment is found from the text before it in the same line;
+	 * strings spanning multiple lines are not detected.
+	 * 
+	 * @param text
+	 * @param before The text that precedes it in the same line.
+	 */
+	static String anonymize(final String text, final String before) {
+		final StringBuilder sb = new StringBuilder(text.length());
+		int state = 0; // 0 for code, or the quote character of an open string, or '#' for a comment
+		for (int i=0; i<before.length(); ++i)
+			state = next(state, before, i);
+		for (int i=0; i<text.length(); ++i) {
+			final char c = text.charAt(i);
+			final int previous = state;
+			state = next(state, text, i);
+			if (0 != previous && 0 != state && '\n' != c)
+				sb.append(Character.isLetter(c) ? 'x' : Character.isDigit(c) ? '0' : c);
+			else
+				sb.append(c);
+		}
+		return escape(sb.toString());
+	}
+	
+	/** @return The state after the character at index i of s, see {@link #anonymize(String, String)}. */
+	static private int next(final int state, final String s, final int i) {
+		final char c = s.charAt(i);
+		if ('\n' == c) return 0;
+		if ('#' == state) return state;
+		if (0 == state) return '#' == c || '\'' == c || '"' == c ? c : 0;
+		// Within a string: ends at an unescaped quote of the same kind
+		if (c == state && (0 == i || '\\' != s.charAt(i - 1))) return 0;
+		return state;
+	}
+	
+	/** Escape backslashes, tabs and line breaks, so that each event fits in one line. */
+	static String escape(final String s) {
+		return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\r", "\\r").replace("\n", "\\n");
+	}
+	
+	static String unescape(final String s) {
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i=0; i<s.length(); ++i) {
+			final char c = s.charAt(i);
+			if ('\\' == c && i + 1 < s.length()) {
+				final char d = s.charAt(++i);
+				sb.append('t' == d ? '\t' : 'r' == d ? '\r' : 'n' == d ? '\n' : d);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
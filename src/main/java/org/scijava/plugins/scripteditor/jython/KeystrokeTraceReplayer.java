@@ -0,0 +1,177 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.scijava.plugins.scripteditor.jython.CompletionMetrics.Counter;
+
+/**
+ * Replays a file recorded by {@link KeystrokeTrace}, without a text area or any other Swing component:
+ * the edits are applied to a plain text document, and each completion request is sent to a {@link JythonAutocompletionProvider}.
+ * Reports the latency percentiles of the completion requests, and how often the parser's caches were hit,
+ * from the {@link CompletionMetrics} counters.
+ * 
+ * Run with the trace files as arguments.
+ */
+public class KeystrokeTraceReplayer
+{
+	/** The latency of each completion request, and the parser's cache counts during the replay. */
+	static public class Report {
+		public final long[] latencies; // nanoseconds, in the order of the requests
+		public final long parseHits, parseMisses, reusedStatements, parsedStatements, segmentHits, segmentMisses;
+		/** Requests that took longer than {@link EdtWatchdog#budgetMillis}. */
+		public final long stalls;
+		
+		Report(final long[] latencies, final long[] counts) {
+			this.latencies = latencies;
+			this.parseHits = counts[0];
+			this.parseMisses = counts[1];
+			this.reusedStatements = counts[2];
+			this.parsedStatements = counts[3];
+			this.segmentHits = counts[4];
+			this.segmentMisses = counts[5];
+			this.stalls = counts[6];
+		}
+		
+		/**
+		 * @param p From 0 to 100.
+		 * @return The latency in nanoseconds below which are p percent of the requests.
+		 */
+		public long percentile(final double p) {
+			if (0 == this.latencies.length) return 0;
+			final long[] sorted = this.latencies.clone();
+			Arrays.sort(sorted);
+			final int i = (int)Math.ceil(p / 100 * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+		}
+		
+		static private String rate(final long hits, final long misses) {
+			return 0 == hits + misses ? "-" : String.format("%.1f%%", 100.0 * hits / (hits + misses));
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("requests: %d\nlatency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f\n", this.latencies.length,
+						percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6, percentile(100) / 1e6)
+					+ "recent parses hit: " + rate(this.parseHits, this.parseMisses) + " of " + (this.parseHits + this.parseMisses) + "\n"
+					+ "statements reused: " + rate(this.reusedStatements, this.parsedStatements) + " of " + (this.reusedStatements + this.parsedStatements) + "\n"
+					+ "parsed segments hit: " + rate(this.segmentHits, this.segmentMisses) + " of " + (this.segmentHits + this.segmentMisses) + "\n"
+					+ "stalls over " + EdtWatchdog.budgetMillis + " ms: " + this.stalls;
+		}
+	}
+	
+	static private final Counter[] COUNTERS = {
+		Counter.PARSE_HITS, Counter.PARSE_MISSES,
+		Counter.REUSED_STATEMENTS, Counter.PARSED_STATEMENTS,
+		Counter.SEGMENT_HITS, Counter.SEGMENT_MISSES,
+		Counter.STALLS
+	};
+	
+	static private long[] counts() {
+		final long[] counts = new long[COUNTERS.length];
+		for (int i=0; i<COUNTERS.length; ++i)
+			counts[i] = CompletionMetrics.get().getCounter(COUNTERS[i]);
+		return counts;
+	}
+	
+	/**
+	 * @param trace A file recorded by {@link KeystrokeTrace}.
+	 * @return The latencies and cache counts of the replay.
+	 * @throws IOException If the file can't be read or isn't a trace.
+	 */
+	static public Report replay(final File trace) throws IOException {
+		final JythonAutocompletionProvider provider = new JythonAutocompletionProvider(null, null);
+		final StringBuilder doc = new StringBuilder();
+		long[] latencies = new long[64];
+		int n = 0;
+		final long[] before = counts();
+		try (final BufferedReader reader = Files.newBufferedReader(trace.toPath(), StandardCharsets.UTF_8)) {
+			if (!KeystrokeTrace.HEADER.equals(reader.readLine()))
+				throw new IOException("Not a keystroke trace: " + trace);
+			for (String line = reader.readLine(); null != line; line = reader.readLine()) {
+				final String[] fields = line.split("\t", -1);
+				if (fields.length < 2) continue;
+				switch (fields[1]) {
+					case "S":
+						doc.setLength(0);
+						doc.append(KeystrokeTrace.unescape(fields[2]));
+						break;
+					case "I":
+						doc.insert(clamp(Integer.parseInt(fields[2]), doc), KeystrokeTrace.unescape(fields[3]));
+						break;
+					case "R":
+						final int offset = clamp(Integer.parseInt(fields[2]), doc);
+						doc.delete(offset, clamp(offset + Integer.parseInt(fields[3]), doc));
+						break;
+					case "Q":
+						final String code = doc.substring(0, clamp(Integer.parseInt(fields[2]), doc));
+						final long start = System.nanoTime();
+						provider.getCompletionsAt(code, alreadyEnteredText(provider, code));
+						if (n == latencies.length) latencies = Arrays.copyOf(latencies, n * 2);
+						latencies[n++] = System.nanoTime() - start;
+						break;
+					default: // caret moves don't need replaying: requests record their caret
+						break;
+				}
+			}
+		}
+		final long[] after = counts();
+		for (int i=0; i<after.length; ++i)
+			after[i] -= before[i];
+		return new Report(Arrays.copyOf(latencies, n), after);
+	}
+	
+	static private int clamp(final int offset, final StringBuilder doc) {
+		return Math.max(0, Math.min(offset, doc.length()));
+	}
+	
+	/** As {@link JythonAutocompletionProvider#getAlreadyEnteredText(javax.swing.text.JTextComponent)} would, at the end of the code. */
+	static String alreadyEnteredText(final JythonAutocompletionProvider provider, final String code) {
+		int i = code.length();
+		while (i > 0 && provider.isValidChar(code.charAt(i - 1))) --i;
+		return code.substring(i);
+	}
+	
+	static public void main(final String[] args) {
+		for (final String path: args) {
+			try {
+				System.out.println(path + "\n" + replay(new File(path)) + "\n");
+			} catch (final IOException e) {
+				System.out.println("Could not replay " + path + ": " + e.getMessage());
+			}
+		}
+		System.exit(0); // the python module watcher thread of Scope doesn't end on its own
+	}
+}
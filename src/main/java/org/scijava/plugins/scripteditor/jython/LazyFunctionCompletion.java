@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fife.ui.autocomplete.CompletionProvider;
+import org.scijava.ui.swing.script.autocompletion.CompletionText;
+
+/**
+ * A {@link CustomFunctionCompletion} that holds on to its {@link CompletionText}
+ * and only creates its parameters, summary and return value description
+ * when the completion popup renders or selects it.
+ * 
+ * Most completions listed for a class are never shown, so this avoids creating
+ * {@link Parameter} instances and summaries for each on every keystroke.
+ */
+public class LazyFunctionCompletion extends CustomFunctionCompletion
+{
+	private final CompletionText ct;
+	/** Set only once all fields are filled in, for other threads to see them filled in. */
+	private volatile boolean initialized = false;
+	/** Whether the thread that holds the lock is filling in the fields, in case a setter calls an overridden getter. */
+	private boolean initializing = false;
+	
+	/**
+	 * 
+	 * @param provider
+	 * @param name The replacement text, without parentheses.
+	 * @param ct The method or constructor to describe.
+	 */
+	public LazyFunctionCompletion(final CompletionProvider provider, final String name, final CompletionText ct) {
+		super(provider, name, ct.getReturnType());
+		this.ct = ct;
+	}
+	
+	private void init() {
+		if (this.initialized) return;
+		synchronized (this) {
+			if (this.initialized || this.initializing) return;
+			this.initializing = true;
+			try {
+				setReturnValueDescription(this.ct.getReturnType());
+				setShortDescription(this.ct.getSummary()); // CompletionText.getDescription returns null
+				final List<java.lang.reflect.Parameter> ps = this.ct.getMethodArgs();
+				final ArrayList<Parameter> params = new ArrayList<>(ps.size());
+				for (final java.lang.reflect.Parameter p: ps) {
+					params.add(new Parameter(p.getType().getCanonicalName(), p.getName(), false)); // can't mark last one as isEndParam = true, would not allow choosing it for some reason
+				}
+				setParams(params);
+				this.initialized = true;
+			} finally {
+				this.initializing = false; // to try again on next use, if failed
+			}
+		}
+	}
+	
+	/** From the {@link CompletionText}, without creating the parameters: sorting overloads shouldn't initialize them. */
+	@Override
+	protected int getParamTypeCount() {
+		return this.ct.getMethodArgs().size();
+	}
+	
+	@Override
+	protected String getParamType(final int index) {
+		return this.ct.getMethodArgs().get(index).getType().getCanonicalName();
+	}
+	
+	@Override
+	public Parameter getParam(final int index) {
+		init();
+		return super.getParam(index);
+	}
+	
+	@Override
+	public int getParamCount() {
+		init();
+		return super.getParamCount();
+	}
+	
+	@Override
+	public String getDefinitionString() {
+		init();
+		return super.getDefinitionString();
+	}
+	
+	@Override
+	public String getShortDescription() {
+		init();
+		return super.getShortDescription();
+	}
+	
+	@Override
+	public String getReturnValueDescription() {
+		init();
+		return super.getReturnValueDescription();
+	}
+	
+	@Override
+	public String getSummary() {
+		init();
+		return super.getSummary();
+	}
+	
+	@Override
+	public String getToolTipText() {
+		init();
+		return super.getToolTipText();
+	}
+}
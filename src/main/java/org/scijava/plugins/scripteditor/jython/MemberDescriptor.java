@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.scijava.ui.swing.script.autocompletion.CompletionText;
+
+/**
+ * A field, method or other member offered for completion after a dot,
+ * with its name and its lower case name computed once, so that matching
+ * a seed on every keystroke doesn't allocate.
+ * 
+ * The members of java classes are computed once per class and shared.
+ */
+public final class MemberDescriptor
+{
+	/** Categories of a match, from best to worst; see {@link #match(String, String)}. */
+	static public final int PREFIX = 0,
+							PREFIX_IGNORE_CASE = 1,
+							SUBSTRING = 2,
+							NO_MATCH = Integer.MAX_VALUE;
+	
+	public final CompletionText ct;
+	/** The replacement text of {@code ct}, e.g. "getProcessor()". */
+	public final String name;
+	public final String lowerName;
+	
+	public MemberDescriptor(final CompletionText ct) {
+		this.ct = ct;
+		this.name = ct.getReplacementText();
+		this.lowerName = this.name.toLowerCase();
+	}
+	
+	/**
+	 * Classify how {@code seed} matches this member's name, in a single pass and without allocating.
+	 * 
+	 * @param seed The text typed after the dot, e.g. "getPro" or "pro".
+	 * @param lowerSeed The same, in lower case.
+	 * @return {@link #PREFIX}, {@link #PREFIX_IGNORE_CASE}, {@link #SUBSTRING} or {@link #NO_MATCH}.
+	 */
+	public int match(final String seed, final String lowerSeed) {
+		if (this.name.startsWith(seed)) return PREFIX;
+		if (this.lowerName.startsWith(lowerSeed)) return PREFIX_IGNORE_CASE;
+		if (this.lowerName.indexOf(lowerSeed, 1) > 0) return SUBSTRING;
+		return NO_MATCH;
+	}
+	
+	static public List<MemberDescriptor> wrap(final List<CompletionText> cts) {
+		final List<MemberDescriptor> members = new ArrayList<>(cts.size());
+		for (final CompletionText ct: cts)
+			members.add(new MemberDescriptor(ct));
+		return members;
+	}
+	
+	static private final ClassValue<List<MemberDescriptor>> instanceMembers = new ClassValue<List<MemberDescriptor>>() {
+		@Override
+		protected List<MemberDescriptor> computeValue(final Class<?> c) {
+			final long t = CompletionMetrics.start();
+			final List<CompletionText> ac = new ArrayList<>();
+			DotAutocompletions.fieldsAndMethodsInto(c, ac);
+			final List<MemberDescriptor> members = Collections.unmodifiableList(wrap(ac));
+			CompletionMetrics.record(CompletionMetrics.Phase.REFLECTION, t);
+			return members;
+		}
+	};
+	
+	static private final ClassValue<List<MemberDescriptor>> publicMembers = new ClassValue<List<MemberDescriptor>>() {
+		@Override
+		protected List<MemberDescriptor> computeValue(final Class<?> c) {
+			final long t = CompletionMetrics.start();
+			final List<CompletionText> ac = new ArrayList<>();
+			DotAutocompletions.publicFieldsAndMethodsInto(c, ac);
+			final List<MemberDescriptor> members = Collections.unmodifiableList(wrap(ac));
+			CompletionMetrics.record(CompletionMetrics.Phase.REFLECTION, t);
+			return members;
+		}
+	};
+	
+	static private final ClassValue<List<MemberDescriptor>> staticMembers = new ClassValue<List<MemberDescriptor>>() {
+		@Override
+		protected List<MemberDescriptor> computeValue(final Class<?> c) {
+			final long t = CompletionMetrics.start();
+			final List<CompletionText> ac = new ArrayList<>();
+			DotAutocompletions.staticFieldsAndStaticMethodsInto(c, ac);
+			final List<MemberDescriptor> members = Collections.unmodifiableList(wrap(ac));
+			CompletionMetrics.record(CompletionMetrics.Phase.REFLECTION, t);
+			return members;
+		}
+	};
+	
+	/**
+	 * @return The non-static fields and methods of {@code c}, as listed by {@link DotAutocompletions#fieldsAndMethodsInto(Class, List)}; cached.
+	 */
+	static public List<MemberDescriptor> instanceMembersOf(final Class<?> c) {
+		return instanceMembers.get(c);
+	}
+	
+	/**
+	 * @return The public fields and methods of {@code c} including inherited ones, as listed by {@link DotAutocompletions#publicFieldsAndMethodsInto(Class, List)}; cached.
+	 */
+	static public List<MemberDescriptor> publicMembersOf(final Class<?> c) {
+		return publicMembers.get(c);
+	}
+	
+	/**
+	 * @return The static fields and methods of {@code c}, as listed by {@link DotAutocompletions#staticFieldsAndStaticMethodsInto(Class, List)}; cached.
+	 */
+	static public List<MemberDescriptor> staticMembersOf(final Class<?> c) {
+		return staticMembers.get(c);
+	}
+	
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
@@ -0,0 +1,585 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.python.core.ParserFacade;
+import org.scijava.ui.swing.script.autocompletion.CompletionText;
+
+/**
+ * A fast, error-tolerant scanner for the outline of python code: imports, assignments,
+ * function and class definitions, and attributes assigned to "self" in methods.
+ * Statements are found by indentation and tokens, so that, unlike {@link ParserFacade},
+ * incomplete code (e.g. mid-edit) doesn't fail as a whole.
+ * 
+ * The full parser is used only to infer the class of assigned values and of returned values,
+ * one expression at a time and only when first needed (see {@link ExpressionDotAutocompletions}).
+ */
+public class OutlineParser
+{
+	/** A logical line: one or more physical lines joined by brackets, triple-quoted strings or backslashes. */
+	static final class Line {
+		/** The width of the indentation, with tabs to the next multiple of 8. */
+		final int indent;
+		/** The first physical line, starting at 1. */
+		final int lineNumber;
+		/** The code without indentation, and with comments blanked out. */
+		final String text;
+		/** Like {@code text} but also with the content of strings blanked out, to search for tokens. */
+		final String mask;
+		
+		Line(final int indent, final int lineNumber, final String text, final String mask) {
+			this.indent = indent;
+			this.lineNumber = lineNumber;
+			this.text = text;
+			this.mask = mask;
+		}
+	}
+	
+	static private final Object lock = new Object();
+	static private String lastCode = null;
+	static private Scope lastScope = null;
+	
+	/**
+	 * Scan the code for the names it defines.
+	 * 
+	 * @param code Python code, which can be incomplete or have errors.
+	 * @return The frozen top-level {@link Scope}, with nested scopes for functions and classes.
+	 */
+	static public Scope parse(final String code) {
+		synchronized (lock) {
+			if (code.equals(lastCode)) {
+				CompletionMetrics.count(CompletionMetrics.Counter.OUTLINE_HITS);
+				return lastScope;
+			}
+		}
+		CompletionMetrics.count(CompletionMetrics.Counter.OUTLINE_MISSES);
+		final long t = CompletionMetrics.start();
+		final Scope scope = new Scope(null);
+		parseInto(code, scope);
+		scope.freeze();
+		CompletionMetrics.record(CompletionMetrics.Phase.PARSE, t);
+		synchronized (lock) {
+			lastCode = code;
+			lastScope = scope;
+		}
+		return scope;
+	}
+	
+	/** Add the names defined in the code to the scope, e.g. those of a top-level statement with errors. */
+	static void parseInto(final String code, final Scope scope) {
+		final List<Line> lines = split(code, true);
+		parseBlock(lines, 0, lines.size(), scope);
+	}
+	
+	/**
+	 * @param code
+	 * @param recover Whether to end an unclosed bracket early as in {@link #split(String, boolean)}, for code with errors;
+	 *                otherwise statements start only where all brackets are closed, as when parsing the code as a whole.
+	 * @return The line (starting at 1) at which each top-level statement starts, including its decorators,
+	 *         and with its elif, else, except and finally clauses as part of it.
+	 */
+	static int[] topLevelStatementLines(final String code, final boolean recover) {
+		final List<Line> lines = split(code, recover);
+		final int[] starts = new int[lines.size()];
+		int n = 0;
+		boolean decorated = false;
+		for (final Line line: lines) {
+			if (line.indent > 0 && n > 0) continue;
+			final String keyword = leadingName(line.mask, 0);
+			final boolean clause = "elif".equals(keyword) || "else".equals(keyword) || "except".equals(keyword) || "finally".equals(keyword);
+			if (n > 0 && (clause || decorated)) {
+				decorated = line.mask.startsWith("@");
+				continue;
+			}
+			starts[n] = 0 == n ? 1 : line.lineNumber; // the first includes any leading comments and blank lines
+			++n;
+			decorated = line.mask.startsWith("@");
+		}
+		return Arrays.copyOf(starts, n);
+	}
+	
+	/**
+	 * Split the code into logical lines, skipping blank lines and comments.
+	 * 
+	 * @param code
+	 * @param recover Whether an unclosed bracket ends at the next line that is not indented deeper and starts with a name,
+	 *                so that a typo doesn't swallow the rest of the code. Valid code can continue within brackets at any indentation,
+	 *                e.g. "x = f(a,\nb)", so that without errors a logical line ends only where all brackets are closed.
+	 */
+	static List<Line> split(final String code, final boolean recover) {
+		final List<Line> lines = new ArrayList<>();
+		final int n = code.length();
+		final char[] text = code.toCharArray();
+		final char[] mask = code.toCharArray();
+		int i = 0,
+			lineNumber = 1;
+		while (i < n) {
+			final int firstLine = lineNumber;
+			final int indent = indentation(code, i);
+			while (i < n && isIndentation(code.charAt(i))) ++i;
+			final int start = i;
+			int depth = 0;
+			boolean hasCode = false;
+			while (i < n) {
+				final char c = code.charAt(i);
+				if ('\n' == c) {
+					++lineNumber;
+					if (0 == depth) break;
+					final int next = i + 1;
+					if (recover && next < n && indentation(code, next) <= indent) {
+						int k = next;
+						while (k < n && isIndentation(code.charAt(k))) ++k;
+						if (k < n && (Character.isJavaIdentifierStart(code.charAt(k)) || '@' == code.charAt(k))) break;
+					}
+					text[i] = mask[i] = ' ';
+					++i;
+				} else if ('#' == c) {
+					while (i < n && '\n' != code.charAt(i)) text[i] = mask[i++] = ' ';
+				} else if ('\\' == c) {
+					text[i] = mask[i] = ' ';
+					++i;
+					if (i < n && '\n' == code.charAt(i)) { // line continuation
+						text[i] = mask[i] = ' ';
+						++lineNumber;
+						++i;
+					}
+				} else if ('\'' == c || '"' == c) {
+					final int end = skipString(code, i, mask);
+					for (int k = i; k < end; ++k)
+						if ('\n' == code.charAt(k)) ++lineNumber;
+					i = end;
+					hasCode = true;
+				} else {
+					if ('(' == c || '[' == c || '{' == c) ++depth;
+					else if ((')' == c || ']' == c || '}' == c) && depth > 0) --depth;
+					if (!Character.isWhitespace(c)) hasCode = true;
+					++i;
+				}
+			}
+			if (hasCode) {
+				int end = i;
+				while (end > start && mask[end - 1] <= ' ') --end;
+				lines.add(new Line(indent, firstLine, new String(text, start, end - start), new String(mask, start, end - start)));
+			}
+			++i; // skip the line break
+		}
+		return lines;
+	}
+	
+	static private boolean isIndentation(final char c) {
+		return ' ' == c || '\t' == c || '\f' == c || '\r' == c;
+	}
+	
+	static private int indentation(final String code, int i) {
+		int indent = 0;
+		for (; i < code.length() && isIndentation(code.charAt(i)); ++i)
+			indent = '\t' == code.charAt(i) ? (indent / 8 + 1) * 8 : indent + 1;
+		return indent;
+	}
+	
+	/** Blank out the content of the string starting at {@code i} in the mask. An unclosed single-quoted string ends at the end of the line.
+	 * @return The index after the closing quotes. */
+	static private int skipString(final String code, int i, final char[] mask) {
+		final int n = code.length();
+		final char q = code.charAt(i);
+		final int quotes = i + 2 < n && q == code.charAt(i + 1) && q == code.charAt(i + 2) ? 3 : 1;
+		i += quotes;
+		while (i < n) {
+			final char c = code.charAt(i);
+			if ('\\' == c) {
+				mask[i++] = ' ';
+				if (i < n && '\n' != code.charAt(i)) mask[i++] = ' ';
+				continue;
+			}
+			if (q == c && (1 == quotes || (i + 2 < n && q == code.charAt(i + 1) && q == code.charAt(i + 2))))
+				return i + quotes;
+			if ('\n' == c && 1 == quotes) return i;
+			mask[i++] = ' ';
+		}
+		return n;
+	}
+	
+	/** Parse the logical lines from {@code from} (inclusive) to {@code to} (exclusive) into the scope; each statement's block is the lines indented deeper. */
+	static private void parseBlock(final List<Line> lines, final int from, final int to, final Scope scope) {
+		int i = from;
+		while (i < to) {
+			final Line line = lines.get(i);
+			int end = i + 1;
+			while (end < to && lines.get(end).indent > line.indent) ++end;
+			parseStatement(line.text, line.mask, lines, i + 1, end, scope);
+			i = end;
+		}
+	}
+	
+	/**
+	 * Parse a statement, with its block if it's a compound statement.
+	 * Assignments, imports, definitions, and the blocks of if, for, while, try and with statements add names to the scope.
+	 */
+	static private void parseStatement(final String text, final String mask, final List<Line> lines, final int from, final int to, final Scope scope) {
+		final String keyword = leadingName(mask, 0);
+		switch (keyword) {
+		case "import":
+			parseImport(text.substring(6), mask.substring(6), scope);
+			return;
+		case "from":
+			parseImportFrom(text, mask, scope);
+			return;
+		case "def":
+			parseFunctionDef(text, mask, lines, from, to, scope);
+			return;
+		case "class":
+			parseClassDef(text, mask, lines, from, to, scope);
+			return;
+		case "if": case "elif": case "else": case "for": case "while":
+		case "try": case "except": case "finally": case "with":
+			// No new scope for these: the block belongs to the enclosing scope
+			final int colon = indexOfTopLevel(mask, ':', 0);
+			if (-1 != colon && colon + 1 < mask.length())
+				parseSimpleStatements(text.substring(colon + 1), mask.substring(colon + 1), scope);
+			parseBlock(lines, from, to, scope);
+			return;
+		case "return": case "pass": case "print": case "del": case "global": case "raise":
+		case "assert": case "yield": case "break": case "continue": case "exec":
+			return;
+		default:
+			if (mask.startsWith("@")) return; // decorator
+			parseSimpleStatements(text, mask, scope);
+			// Lines unexpectedly indented deeper: tolerate them as part of the same scope
+			parseBlock(lines, from, to, scope);
+		}
+	}
+	
+	/** Statements in one line separated by semicolons. */
+	static private void parseSimpleStatements(final String text, final String mask, final Scope scope) {
+		int start = 0;
+		for (final int semicolon: indicesOfTopLevel(mask, ';')) {
+			parseSimpleStatement(text.substring(start, semicolon).trim(), mask.substring(start, semicolon).trim(), scope);
+			start = semicolon + 1;
+		}
+		parseSimpleStatement(text.substring(start).trim(), mask.substring(start).trim(), scope);
+	}
+	
+	static private void parseSimpleStatement(final String text, final String mask, final Scope scope) {
+		if (text.isEmpty()) return;
+		switch (leadingName(mask, 0)) {
+		case "import":
+			parseImport(text.substring(6), mask.substring(6), scope);
+			return;
+		case "from":
+			parseImportFrom(text, mask, scope);
+			return;
+		default:
+			parseAssignment(text, mask, scope);
+		}
+	}
+	
+	/** e.g. "import os, ij.IJ as IJ" */
+	static private void parseImport(final String text, final String mask, final Scope scope) {
+		for (final String[] item: splitTopLevel(text, mask, ',')) {
+			final String[] parts = item[0].trim().split("\\s+as\\s+");
+			final String name = parts[0].trim();
+			if (!isDottedName(name)) continue;
+			final String as = 2 == parts.length ? parts[1].trim() : name;
+			scope.putImport(as, new StaticDotAutocompletions(name));
+		}
+	}
+	
+	/** e.g. "from ij import IJ, ImagePlus as IP" or "from ij import (IJ,\n ImagePlus)" */
+	static private void parseImportFrom(final String text, final String mask, final Scope scope) {
+		final int im = mask.indexOf(" import ");
+		if (-1 == im) return; // incomplete
+		final String module = text.substring(4, im).trim();
+		if (!module.matches("[\\w.]+")) return; // incomplete
+		String names = text.substring(im + 8).trim(),
+			   namesMask = mask.substring(im + 8).trim();
+		if (namesMask.startsWith("(")) {
+			final int close = namesMask.indexOf(')');
+			names = names.substring(1, -1 == close ? names.length() : close);
+			namesMask = namesMask.substring(1, -1 == close ? namesMask.length() : close);
+		}
+		for (final String[] item: splitTopLevel(names, namesMask, ',')) {
+			final String[] parts = item[0].trim().split("\\s+as\\s+");
+			final String name = parts[0].trim();
+			if (!isName(name)) continue; // e.g. "*"
+			final String as = 2 == parts.length && isName(parts[1].trim()) ? parts[1].trim() : name;
+			scope.putImport(as, new StaticDotAutocompletions(module + "." + name));
+		}
+	}
+	
+	/** Assignments like "a = 1", "a = b = f()", "a, b = 1, 2" and "self.width = 10"; anything else is ignored. */
+	static private void parseAssignment(final String text, final String mask, final Scope scope) {
+		final List<Integer> equals = new ArrayList<>();
+		for (final int i: indicesOfTopLevel(mask, '=')) {
+			final char prev = i > 0 ? mask.charAt(i - 1) : ' ',
+					   next = i + 1 < mask.length() ? mask.charAt(i + 1) : ' ';
+			if ('=' == next || -1 != "=!<>+-*/%&|^".indexOf(prev)) continue; // comparison or augmented assignment
+			equals.add(i);
+		}
+		if (equals.isEmpty()) return;
+		final int last = equals.get(equals.size() - 1);
+		final String right = text.substring(last + 1).trim(),
+					 rightMask = mask.substring(last + 1).trim();
+		if (right.isEmpty()) return; // incomplete
+		int start = 0;
+		for (final int i: equals) {
+			assign(text.substring(start, i).trim(), mask.substring(start, i).trim(), right, rightMask, scope);
+			start = i + 1;
+		}
+	}
+	
+	static private void assign(final String left, final String leftMask, final String right, final String rightMask, final Scope scope) {
+		if (isName(left)) {
+			scope.putVar(left, new ExpressionDotAutocompletions(right, boundNames(rightMask, scope), scope));
+			return;
+		}
+		if (isDottedName(left)) {
+			// e.g. "self.width = 10": add "width" as a possible expansion of "self", like JythonScriptParser.parseAssignStatement
+			final List<String> names = new ArrayList<>();
+			for (final String name: left.split("\\."))
+				names.add(name.trim());
+			ClassDotAutocompletions.assignAttribute(names, scope);
+			return;
+		}
+		// Deconstruction, e.g. "width, height = imp.getWidth(), imp.getHeight()"
+		final List<String[]> targets = splitTopLevel(unwrap(left, leftMask), unwrap(leftMask, leftMask), ','),
+							 values = splitTopLevel(unwrap(right, rightMask), unwrap(rightMask, rightMask), ',');
+		if (targets.size() < 2 || targets.size() != values.size()) return;
+		// All values as of before the assignment, e.g. "a, b = b, a"
+		final List<Map<String, DotAutocompletions>> bound = new ArrayList<>();
+		for (final String[] value: values)
+			bound.add(boundNames(value[1], scope));
+		for (int i=0; i<targets.size(); ++i) {
+			final String name = targets.get(i)[0].trim();
+			if (isName(name))
+				scope.putVar(name, new ExpressionDotAutocompletions(values.get(i)[0].trim(), bound.get(i), scope));
+		}
+	}
+	
+	/**
+	 * @param mask The mask of an expression.
+	 * @return The names used in the expression that are bound in the scope, other than attributes:
+	 *         e.g. "imp" and "IJ" in "imp.crop() if imp else IJ.getImage()".
+	 */
+	static private Map<String, DotAutocompletions> boundNames(final String mask, final Scope scope) {
+		final Map<String, DotAutocompletions> bound = new HashMap<>();
+		final int n = mask.length();
+		char previous = ' '; // the last character other than whitespace
+		for (int i = 0; i < n;) {
+			final char c = mask.charAt(i);
+			if (!Character.isJavaIdentifierPart(c)) {
+				if (!Character.isWhitespace(c)) previous = c;
+				++i;
+				continue;
+			}
+			int end = i + 1;
+			while (end < n && Character.isJavaIdentifierPart(mask.charAt(end))) ++end;
+			if ('.' != previous && Character.isJavaIdentifierStart(c)) { // not an attribute nor a number
+				final String name = mask.substring(i, end);
+				DotAutocompletions da = scope.vars.get(name);
+				if (null == da) da = scope.imports.get(name);
+				if (null != da) bound.put(name, da);
+			}
+			previous = mask.charAt(end - 1);
+			i = end;
+		}
+		return bound;
+	}
+	
+	/** e.g. "def getProcessor(self, index):" with its block. */
+	static private void parseFunctionDef(final String text, final String mask, final List<Line> lines, final int from, final int to, final Scope parent) {
+		final String name = leadingName(mask, 3);
+		if (name.isEmpty()) return;
+		final int open = mask.indexOf('(');
+		final int close = -1 == open ? -1 : matchingBracket(mask, open);
+		final List<String> argumentNames = new ArrayList<>();
+		if (-1 != open) {
+			final int end = -1 == close ? mask.length() : close;
+			for (final String[] arg: splitTopLevel(text.substring(open + 1, end), mask.substring(open + 1, end), ',')) {
+				final String argName = leadingName(arg[1].trim().replaceFirst("^\\*+", ""), 0);
+				if (!argName.isEmpty()) argumentNames.add(argName);
+			}
+		}
+		final Scope fn_scope = new Scope(parent, null);
+		for (final String arg: argumentNames) {
+			// Empty. For the first argument ("self" or similar) will be replaced later if it's part of a class definition.
+			fn_scope.putVar(arg, new ClassDotAutocompletions(ClassDotAutocompletions.UNKNOWN, Collections.emptyList(), Collections.emptyList(),
+					new ArrayList<CompletionText>(), fn_scope));
+		}
+		// The body: after the colon in the same line, and the block
+		final int colon = indexOfTopLevel(mask, ':', -1 == close ? 0 : close);
+		final List<String> returned = new ArrayList<>();
+		if (-1 != colon && colon + 1 < mask.length()) {
+			final String inline = text.substring(colon + 1).trim();
+			if (inline.startsWith("return ")) returned.add(inline.substring(7));
+			else parseSimpleStatements(text.substring(colon + 1), mask.substring(colon + 1), fn_scope);
+		}
+		parseBlock(lines, from, to, fn_scope);
+		// The returned values, except those of functions and classes defined within
+		int nested = Integer.MAX_VALUE; // the indentation of a nested definition
+		for (int k = from; k < to; ++k) {
+			final Line line = lines.get(k);
+			if (line.indent > nested) continue;
+			nested = Integer.MAX_VALUE;
+			final String keyword = leadingName(line.mask, 0);
+			if ("def".equals(keyword) || "class".equals(keyword)) nested = line.indent;
+			else if ("return".equals(keyword)) returned.add(line.text.substring(6).trim());
+		}
+		// The return type, inferred when first needed
+		final Supplier<DotAutocompletions> returnedValue = () -> JythonScriptParser.commonReturned(returned.stream()
+				.filter(expression -> !expression.isEmpty())
+				.map(expression -> JythonScriptParser.parseExpression(expression, fn_scope))
+				.collect(Collectors.toList()));
+		parent.putVar(name, new DefVarDotAutocompletions(name, returnedValue, argumentNames, fn_scope));
+	}
+	
+	/** e.g. "class Volume(VirtualStack):" with its block, like {@link JythonScriptParser#parseClassDef}. */
+	static private void parseClassDef(final String text, final String mask, final List<Line> lines, final int from, final int to, final Scope parent) {
+		final String pyClassname = leadingName(mask, 5);
+		if (pyClassname.isEmpty()) return;
+		final Scope class_scope = new Scope(parent, pyClassname);
+		parseBlock(lines, from, to, class_scope);
+		// Methods of the class, and the constructor parameters from its __init__ method if any
+		final List<CompletionText> classDotAutocompletions = new ArrayList<>();
+		final List<DefVarDotAutocompletions> methods = new ArrayList<>();
+		final List<String> argumentNames = new ArrayList<>();
+		for (final DotAutocompletions da: class_scope.vars.values()) {
+			if (!(da instanceof DefVarDotAutocompletions)) continue;
+			final DefVarDotAutocompletions dda = (DefVarDotAutocompletions)da;
+			classDotAutocompletions.add(new CompletionText(dda.fnName));
+			methods.add(dda);
+			if ("__init__".equals(dda.fnName) && dda.argumentNames.size() > 1)
+				argumentNames.addAll(dda.argumentNames.subList(1, dda.argumentNames.size()));
+		}
+		// Superclasses
+		final List<String> superclassNames = new ArrayList<>();
+		final Map<String, ClassDotAutocompletions> localSuperclasses = new HashMap<>();
+		final int open = mask.indexOf('(');
+		if (-1 != open) {
+			final int close = matchingBracket(mask, open);
+			final int end = -1 == close ? mask.length() : close;
+			for (final String[] base: splitTopLevel(text.substring(open + 1, end), mask.substring(open + 1, end), ',')) {
+				final String baseName = base[0].trim();
+				if (baseName.isEmpty()) continue;
+				ClassDotAutocompletions.addSuperclass(baseName, parent, superclassNames, localSuperclasses);
+			}
+		}
+		final ClassDotAutocompletions cda = new ClassDotAutocompletions(pyClassname, superclassNames, localSuperclasses, argumentNames, classDotAutocompletions, class_scope);
+		// Add the completions of the class to the first argument of each method (generally "self")
+		for (final DefVarDotAutocompletions fnda: methods) {
+			if (fnda.argumentNames.isEmpty()) continue;
+			final DotAutocompletions argda = fnda.scope.vars.get(fnda.argumentNames.get(0));
+			if (argda instanceof ClassDotAutocompletions)
+				((ClassDotAutocompletions)argda).mutateIntoPlus(cda);
+		}
+		parent.putVar(pyClassname, cda);
+	}
+	
+	/** @return The python name starting at {@code start} after any whitespace, or an empty String. */
+	static String leadingName(final String s, int start) {
+		while (start < s.length() && Character.isWhitespace(s.charAt(start))) ++start;
+		int end = start;
+		while (end < s.length() && (end == start ? Character.isJavaIdentifierStart(s.charAt(end)) : Character.isJavaIdentifierPart(s.charAt(end)))
+				&& '$' != s.charAt(end))
+			++end;
+		return s.substring(start, end);
+	}
+	
+	static private boolean isName(final String s) {
+		return !s.isEmpty() && leadingName(s, 0).length() == s.length();
+	}
+	
+	static private boolean isDottedName(final String s) {
+		if (s.isEmpty()) return false;
+		for (final String part: s.split("\\.", -1))
+			if (!isName(part.trim())) return false;
+		return true;
+	}
+	
+	/** @return The index of the closing bracket matching the opening bracket at {@code open}, or -1 if unclosed. */
+	static private int matchingBracket(final String mask, final int open) {
+		int depth = 0;
+		for (int i = open; i < mask.length(); ++i) {
+			final char c = mask.charAt(i);
+			if ('(' == c || '[' == c || '{' == c) ++depth;
+			else if (')' == c || ']' == c || '}' == c) {
+				if (0 == --depth) return i;
+			}
+		}
+		return -1;
+	}
+	
+	/** Without the brackets that enclose all of it, if any, e.g. "(a, b)" becomes "a, b". */
+	static private String unwrap(final String s, final String mask) {
+		if (!mask.isEmpty() && -1 != "([".indexOf(mask.charAt(0)) && matchingBracket(mask, 0) == mask.length() - 1)
+			return s.substring(1, s.length() - 1);
+		return s;
+	}
+	
+	static private int indexOfTopLevel(final String mask, final char c, final int from) {
+		int depth = 0;
+		for (int i = from; i < mask.length(); ++i) {
+			final char d = mask.charAt(i);
+			if ('(' == d || '[' == d || '{' == d) ++depth;
+			else if ((')' == d || ']' == d || '}' == d) && depth > 0) --depth;
+			else if (c == d && 0 == depth) return i;
+		}
+		return -1;
+	}
+	
+	/** @return The indices of {@code c} outside of brackets. */
+	static private List<Integer> indicesOfTopLevel(final String mask, final char c) {
+		final List<Integer> indices = new ArrayList<>();
+		for (int i = indexOfTopLevel(mask, c, 0); -1 != i; i = indexOfTopLevel(mask, c, i + 1))
+			indices.add(i);
+		return indices;
+	}
+	
+	/** Split at {@code c} outside of brackets.
+	 * @return Pairs of text and mask. */
+	static private List<String[]> splitTopLevel(final String text, final String mask, final char c) {
+		final List<String[]> parts = new ArrayList<>();
+		int start = 0;
+		for (final int i: indicesOfTopLevel(mask, c)) {
+			parts.add(new String[]{text.substring(start, i), mask.substring(start, i)});
+			start = i + 1;
+		}
+		if (!mask.substring(start).trim().isEmpty()) // e.g. a trailing comma
+			parts.add(new String[]{text.substring(start), mask.substring(start)});
+		return parts;
+	}
+}
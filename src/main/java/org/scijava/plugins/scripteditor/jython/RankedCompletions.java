@@ -0,0 +1,158 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.fife.ui.autocomplete.Completion;
+
+/**
+ * A list of {@link Completion} ranked by a sort key computed once per candidate:
+ * a category (lower is better, e.g. 0 for a prefix match) and then a name.
+ *
+ * Only the best {@code topN} candidates are listed, selected and ordered with a bounded heap:
+ * the rest are never listed, which keeps a short seed from creating a {@link Completion} for every member.
+ * Each {@link Completion} is created only when its entry is accessed.
+ *
+ * @param <T> The type of the candidates, e.g. {@code CompletionText}.
+ */
+public class RankedCompletions<T> extends AbstractList<Completion>
+{
+	private final List<T> candidates;
+	private final Function<T, Completion> toCompletion;
+	/** Sort keys, one per candidate. */
+	private final int[] categories;
+	private final String[] names;
+	/** Indices into candidates of the best ones, in ranked order. */
+	private final int[] order;
+	private final Completion[] completions;
+
+	/**
+	 *
+	 * @param candidates The candidates to rank.
+	 * @param category Computes the category of a candidate, lower is better; called once per candidate.
+	 * @param name Computes the name of a candidate, to sort alphabetically within a category; called once per candidate.
+	 * @param toCompletion Creates the {@link Completion} for a candidate, only when it is accessed.
+	 * @param topN The number of candidates to list, at most.
+	 */
+	public RankedCompletions(final List<T> candidates, final ToIntFunction<T> category, final Function<T, String> name,
+			final Function<T, Completion> toCompletion, final int topN) {
+		this(candidates, candidates.stream().mapToInt(category).toArray(), name, toCompletion, topN);
+	}
+
+	/**
+	 *
+	 * @param candidates The candidates to rank.
+	 * @param categories The category of each candidate, lower is better, e.g. from {@link MemberDescriptor#match(String, String)}.
+	 * @param name Computes the name of a candidate, to sort alphabetically within a category; called once per candidate.
+	 * @param toCompletion Creates the {@link Completion} for a candidate, only when it is accessed.
+	 * @param topN The number of candidates to list, at most.
+	 */
+	public RankedCompletions(final List<T> candidates, final int[] categories, final Function<T, String> name,
+			final Function<T, Completion> toCompletion, final int topN) {
+		this.candidates = candidates;
+		this.toCompletion = toCompletion;
+		final int n = candidates.size();
+		this.categories = categories;
+		this.names = new String[n];
+		for (int i=0; i<n; ++i)
+			this.names[i] = name.apply(candidates.get(i));
+		// Select the best topN with a bounded max-heap: the worst of the best is at heap[0]
+		final int k = Math.max(0, Math.min(topN, n));
+		final int[] heap = new int[k];
+		int size = 0;
+		for (int i=0; i<n; ++i) {
+			if (size < k) {
+				heap[size] = i;
+				siftUp(heap, size++);
+			} else if (k > 0 && compare(i, heap[0]) < 0) {
+				heap[0] = i;
+				siftDown(heap, 0, size);
+			}
+		}
+		// Pop the heap from worst to best, filling the order backwards
+		this.order = new int[size];
+		for (int j = size -1; j > -1; --j) {
+			this.order[j] = heap[0];
+			heap[0] = heap[j];
+			siftDown(heap, 0, j);
+		}
+		this.completions = new Completion[size];
+	}
+
+	private int compare(final int i, final int j) {
+		final int c = Integer.compare(this.categories[i], this.categories[j]);
+		return 0 != c ? c : this.names[i].compareTo(this.names[j]);
+	}
+
+	private void siftUp(final int[] heap, int i) {
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			if (compare(heap[i], heap[parent]) <= 0) return;
+			swap(heap, i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(final int[] heap, int i, final int size) {
+		while (true) {
+			final int left = 2 * i + 1;
+			if (left >= size) return;
+			final int right = left + 1;
+			final int worst = right < size && compare(heap[right], heap[left]) > 0 ? right : left;
+			if (compare(heap[worst], heap[i]) <= 0) return;
+			swap(heap, i, worst);
+			i = worst;
+		}
+	}
+
+	static private void swap(final int[] a, final int i, final int j) {
+		final int tmp = a[i];
+		a[i] = a[j];
+		a[j] = tmp;
+	}
+
+	@Override
+	public Completion get(final int index) {
+		Completion c = this.completions[index];
+		if (null == c) {
+			c = this.toCompletion.apply(this.candidates.get(this.order[index]));
+			this.completions[index] = c;
+		}
+		return c;
+	}
+
+	@Override
+	public int size() {
+		return this.order.length;
+	}
+}
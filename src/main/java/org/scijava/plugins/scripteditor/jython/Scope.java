@@ -29,8 +29,12 @@
 package org.scijava.plugins.scripteditor.jython;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
@@ -40,27 +44,51 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.python.indexer.Indexer;
+import org.python.indexer.NBinding;
 import org.python.indexer.types.NModuleType;
 import org.scijava.ui.swing.script.autocompletion.CompletionText;
 
 
 
+/**
+ * The names defined in a python module, function or class body, and the nested scopes of its function and class definitions.
+ * 
+ * A {@code Scope} is populated while parsing and then frozen (see {@link #freeze()}): from then on it is immutable,
+ * and can be shared across threads and reused by later parses of the same code.
+ */
 public class Scope {
+	/** The enclosing scope, of the same parse: names not found in this scope, e.g. by a function body parsed lazily, are looked up there. */
 	final Scope parent;
 	final String className; // if any
-	final private List<Scope> children = new ArrayList<>();
-	final HashMap<String, DotAutocompletions> imports = new HashMap<>();
-	final HashMap<String, DotAutocompletions> vars = new HashMap<>();
+	private List<Scope> children = new ArrayList<>();
+	/** Mutable while parsing, unmodifiable once frozen: use {@link #putImport(String, DotAutocompletions)} and {@link #putVar(String, DotAutocompletions)}. */
+	Map<String, DotAutocompletions> imports = new HashMap<>();
+	Map<String, DotAutocompletions> vars = new HashMap<>();
+	private boolean frozen = false;
+	/** Parses the body of a function into this scope on first use, when parsed lazily; null once parsed. */
+	private volatile Runnable deferredBody = null;
+	private boolean parsingBody = false; // guarded by deferredBodies
 	
 	/** Access to jython's builtins (functions in the global scope) and default modules (array, itertools, csv, etc.)
 	 *  as well as to an other user-defined modules.
 	 */
 	static final Indexer indexer = new Indexer();
 	
+	/** Incremented every time the indexer's module table is cleared, to invalidate anything derived from loaded modules. */
+	static private volatile int moduleTableGeneration = 0;
+	
+	/** The classes defined in each python module, by module name, parsed from the module's file; cleared along with the indexer's module table. */
+	static private final Map<String, Scope> moduleScopes = new ConcurrentHashMap<>();
+	
 	static private Thread module_watcher;
 	static private WatchService watcher;
 	static private Hashtable<WatchKey, Path> keys = new Hashtable<>();
@@ -80,12 +108,14 @@ public class Scope {
 							return;
 						}
 						if (keys.containsKey(key)) {
-							JythonDev.print("Python module at:\n" + keys.get(key) + "\n ... was updated. Clearing indexer cache.");
+							JythonDev.print(path -> "Python module at:\n" + path + "\n ... was updated. Clearing indexer cache.", keys.get(key));
 							// One of the files changed: unload all, given that parent modules would have been loaded as well
 							// and it gets complicated quickly to find out which need to be reloaded and which don't.
 							keys.clear();
 							synchronized (indexer) {
 								indexer.clearModuleTable();
+								moduleScopes.clear();
+								++moduleTableGeneration;
 							}
 						}
 					}
@@ -110,11 +140,19 @@ public class Scope {
 	static NModuleType loadPythonModule(final String qname) {
 		synchronized (indexer) {
 			NModuleType mod = null;
+			final long t = CompletionMetrics.start();
+			final Object event = FlightRecorderEvents.begin(FlightRecorderEvents.Type.MODULE_LOAD);
+			final int loadedFiles = null == event ? 0 : indexer.getLoadedFiles().size();
 			try {
 				mod = indexer.loadModule(qname);
-				if (null == mod) return null;
 			} catch (Exception e) {
-				JythonDev.print("Could not load python module named " + qname, e);
+				JythonDev.print(() -> "Could not load python module named " + qname, e);
+			}
+			CompletionMetrics.record(CompletionMetrics.Phase.MODULE_LOAD, t);
+			if (null != event) // no new files loaded: the module was already in the indexer's table
+				FlightRecorderEvents.commit(event, qname, null == mod ? "failure" : indexer.getLoadedFiles().size() > loadedFiles ? "miss" : "hit");
+			if (null == mod) {
+				CompletionMetrics.count(CompletionMetrics.Counter.MODULE_LOAD_FAILURES);
 				return null;
 			}
 			try {
@@ -129,15 +167,98 @@ public class Scope {
 							StandardWatchEventKinds.ENTRY_DELETE);
 					keys.put(key, path);
 				} else {
-					JythonDev.print("Python module " + qname + " doesn't have an associated file path.");
+					JythonDev.print(() -> "Python module " + qname + " doesn't have an associated file path.");
 				}
 			} catch (Exception e) {
-				JythonDev.print("Could not load python module named " + qname, e);	
+				JythonDev.print(() -> "Could not load python module named " + qname, e);	
 			}
 			return mod;
 		}
 	}
 	
+	/** @return A copy of the directories in which the {@link #indexer} looks for python modules. */
+	static List<String> getLoadPath() {
+		synchronized (indexer) {
+			return new ArrayList<>(indexer.getLoadPath());
+		}
+	}
+	
+	/**
+	 * Add a directory in which the {@link #indexer} looks for python modules, unless already there.
+	 * 
+	 * @param dir
+	 * @throws IOException
+	 */
+	static void addLoadPath(final String dir) throws IOException {
+		synchronized (indexer) {
+			if (!indexer.getLoadPath().contains(dir))
+				indexer.addPath(dir);
+		}
+	}
+	
+	/**
+	 * @return The number of times that the loaded python modules were cleared, because one of their files changed.
+	 */
+	static int getModuleTableGeneration() {
+		return moduleTableGeneration;
+	}
+	
+	/**
+	 * Find the members of a python class defined in a module, e.g. "mymodule.MyClass", via the {@link #indexer}.
+	 * 
+	 * @param qname The fully qualified name of the class.
+	 * @return The names of the fields and methods of the class, or an empty list if it can't be found.
+	 */
+	static List<String> pythonClassMemberNames(final String qname) {
+		final int idot = qname.lastIndexOf('.');
+		if (idot < 1) return Collections.emptyList();
+		final NModuleType module = loadPythonModule(qname.substring(0, idot));
+		if (null == module) return Collections.emptyList();
+		synchronized (indexer) {
+			final NBinding binding = module.getTable().lookupLocal(qname.substring(idot + 1));
+			if (null == binding || null == binding.getType() || !binding.getType().isClassType())
+				return Collections.emptyList();
+			return new ArrayList<>(binding.getType().getTable().keySet());
+		}
+	}
+	
+	/**
+	 * Find a python class defined in a module, e.g. "mymodule.MyClass", to resolve the superclasses of a class.
+	 * The module file is parsed with the {@link OutlineParser} only once, and its classes are completed
+	 * with the members found by the {@link #indexer}, such as fields assigned in methods.
+	 * 
+	 * @param qname The fully qualified name of the class.
+	 * @return The class, or null if not found.
+	 */
+	static ClassDotAutocompletions findPythonClass(final String qname) {
+		final int idot = qname.lastIndexOf('.');
+		if (idot < 1) return null;
+		final String moduleName = qname.substring(0, idot);
+		final Scope scope = moduleScopes.computeIfAbsent(moduleName, Scope::parsePythonModule);
+		final DotAutocompletions da = scope.vars.get(qname.substring(idot + 1));
+		return da instanceof ClassDotAutocompletions ? (ClassDotAutocompletions)da : null;
+	}
+	
+	static private Scope parsePythonModule(final String moduleName) {
+		final Scope scope = new Scope(null);
+		final NModuleType module = loadPythonModule(moduleName);
+		if (null != module && null != module.getFile()) {
+			try {
+				OutlineParser.parseInto(new String(Files.readAllBytes(Paths.get(module.getFile())), StandardCharsets.UTF_8), scope);
+				for (final Map.Entry<String, DotAutocompletions> e: scope.vars.entrySet()) {
+					if (!(e.getValue() instanceof ClassDotAutocompletions)) continue;
+					final ClassDotAutocompletions cda = (ClassDotAutocompletions)e.getValue();
+					for (final String name: pythonClassMemberNames(moduleName + "." + e.getKey()))
+						cda.put(new CompletionText(name));
+				}
+			} catch (final Exception e) {
+				JythonDev.print(() -> "Could not parse python module " + moduleName, e);
+			}
+		}
+		scope.freeze();
+		return scope;
+	}
+	
 	public Scope(final Scope parent) {
 		this(parent, null);
 	}
@@ -145,18 +266,140 @@ public class Scope {
 	public Scope(final Scope parent, final String className) {
 		this.parent = parent;
 		if (null != parent) {
-			parent.children.add(this);
+			parent.adopt(this);
 		}
 		this.className = className;
 	}
 	
+	/** A frozen scope with only the given names, that is not a child of its parent, see {@link #snapshot(Scope, Map)}. */
+	private Scope(final Scope parent, final String className, final Map<String, DotAutocompletions> vars) {
+		this.parent = parent;
+		this.className = className;
+		this.vars = Collections.unmodifiableMap(vars);
+		this.imports = Collections.emptyMap();
+		this.children = Collections.emptyList();
+		this.frozen = true; // without freezing the values, which may belong to a scope still being parsed
+	}
+	
 	public boolean isEmpty() {
+		parseDeferredBody();
 		return imports.isEmpty() && vars.isEmpty();
 	}
 	
+	/**
+	 * Postpone populating this scope, e.g. with the statements of a function body, until it is first used.
+	 * The scope can be frozen meanwhile: its contents are frozen once parsed. Whenever parsed, the names that the body
+	 * doesn't bind resolve against the {@link #parent}, which is fixed on creation: the code of the same parse.
+	 */
+	void defer(final Runnable body) {
+		checkNotFrozen();
+		this.deferredBody = body;
+	}
+	
+	/**
+	 * All deferred bodies are parsed under this one lock: parsing one can parse others, e.g. to infer what a called function returns,
+	 * and with a lock per scope two threads could take them in opposite orders.
+	 */
+	static private final Object deferredBodies = new Object();
+	
+	/** Parse the deferred body, if any and not yet parsed. */
+	void parseDeferredBody() {
+		if (null == this.deferredBody) return;
+		synchronized (deferredBodies) {
+			final Runnable body = this.deferredBody;
+			if (null == body || this.parsingBody) return; // already parsed, or being parsed by this thread
+			this.parsingBody = true;
+			try {
+				body.run();
+			} catch (final Throwable t) {
+				JythonDev.printError(t);
+			} finally {
+				this.parsingBody = false;
+				if (this.frozen) freezeContents();
+				this.deferredBody = null;
+			}
+		}
+	}
+	
+	private void checkNotFrozen() {
+		if (this.frozen && !this.parsingBody) throw new IllegalStateException("Can't modify a frozen Scope");
+	}
+	
+	void putImport(final String name, final DotAutocompletions da) {
+		checkNotFrozen();
+		this.imports.put(name, da);
+	}
+	
+	void putImports(final Map<String, DotAutocompletions> imports) {
+		for (final Map.Entry<String, DotAutocompletions> e: imports.entrySet())
+			putImport(e.getKey(), e.getValue());
+	}
+	
+	void putVar(final String name, final DotAutocompletions da) {
+		checkNotFrozen();
+		this.vars.put(name, da);
+	}
+	
+	void putVars(final Map<String, DotAutocompletions> vars) {
+		for (final Map.Entry<String, DotAutocompletions> e: vars.entrySet())
+			putVar(e.getKey(), e.getValue());
+	}
+	
+	/**
+	 * A scope in which to resolve an expression as of the statement it is in, see {@link ExpressionDotAutocompletions}:
+	 * with only the given names, as they were bound in {@code scope} then, and the enclosing scopes of {@code scope} as they are now.
+	 * It is not a child of the enclosing scope.
+	 * 
+	 * @param scope
+	 * @param bound The names bound in {@code scope} at the statement.
+	 */
+	static Scope snapshot(final Scope scope, final Map<String, DotAutocompletions> bound) {
+		return new Scope(scope.parent, scope.className, bound);
+	}
+	
+	/** Add a new scope, whose parent is this one, as a child. A scope is never reused by another parse, nor given another parent. */
+	private void adopt(final Scope child) {
+		checkNotFrozen();
+		this.children.add(child);
+	}
+	
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+	
+	/**
+	 * Make this scope, its names and its nested scopes immutable. Idempotent.
+	 * 
+	 * @return this
+	 */
+	public Scope freeze() {
+		if (this.frozen) return this;
+		this.frozen = true;
+		if (null == this.deferredBody) freezeContents(); // otherwise, once parsed
+		return this;
+	}
+	
+	private void freezeContents() {
+		this.imports = Collections.unmodifiableMap(this.imports);
+		this.vars = Collections.unmodifiableMap(this.vars);
+		this.children = Collections.unmodifiableList(this.children);
+		for (final DotAutocompletions da: this.imports.values())
+			freeze(da);
+		for (final DotAutocompletions da: this.vars.values())
+			freeze(da);
+		for (final Scope child: this.children)
+			child.freeze();
+	}
+	
+	static private void freeze(final DotAutocompletions da) {
+		if (da instanceof DefVarDotAutocompletions)
+			((DefVarDotAutocompletions)da).freeze();
+	}
+	
 	public DotAutocompletions find(final String name, final DotAutocompletions default_value) {
 		Scope scope = this;
 		while (null != scope) {
+			scope.parseDeferredBody();
 			DotAutocompletions da = scope.vars.get(name);
 			if (null == da)
 				da = scope.imports.get(name);
@@ -166,10 +409,13 @@ public class Scope {
 		}
 		// Check python builtins
 		final String builtin_className = "__builtin__." + name + "."; // e.g. __builtin__.str.join
-		final List<CompletionText> dotAutocompletions = indexer.getBindings().keySet().stream()
-				.filter(s -> s.startsWith(builtin_className))
-				.map(s -> new CompletionText(s.substring(builtin_className.length())))
-				.collect(Collectors.toList());
+		final List<CompletionText> dotAutocompletions;
+		synchronized (indexer) {
+			dotAutocompletions = indexer.getBindings().keySet().stream()
+					.filter(s -> s.startsWith(builtin_className))
+					.map(s -> new CompletionText(s.substring(builtin_className.length())))
+					.collect(Collectors.toList());
+		}
 		if (!dotAutocompletions.isEmpty())
 			return new ClassDotAutocompletions(name, Collections.emptyList(), Collections.emptyList(), dotAutocompletions, this);
 		
@@ -177,138 +423,215 @@ public class Scope {
 	}
 	
 	public List<String> findStartsWith(final String name) {
-		final List<String> completions = new ArrayList<>();
-		Scope scope = this;
-		while (null != scope) {
-			for (final String varName: scope.vars.keySet()) {
-				if (varName.startsWith(name)) completions.add(varName);
-			}
-			for (final String importName: scope.imports.keySet()) {
-				if (importName.startsWith(name)) completions.add(importName);
-			}
-			for (String builtinName: indexer.getBindings().keySet()) {
-				if (builtinName.startsWith("__builtin__."))
-					builtinName = builtinName.substring(12); // without the "__builtin__." prefix
-				if (builtinName.startsWith(name)) completions.add(builtinName);
-			}
-			scope = scope.parent;
-		}
-		return completions;
+		return new ArrayList<>(findStartsWith2(name).keySet());
 	}
 	
 	/** Return a table of names vs classnames, with classnames being null for python builtins.
+	 * Names of inner scopes shadow those of outer scopes and python builtins.
 	 * 
 	 * @param name
 	 * @return
 	 */
 	public Map<String, String> findStartsWith2(final String name) {
 		final Map<String, String> completions = new HashMap<>();
-		Scope scope = this;
-		while (null != scope) {
-			for (final Map.Entry<String, DotAutocompletions> e: scope.vars.entrySet()) {
-				if (e.getKey().startsWith(name)) completions.put(e.getKey(), e.getValue().getClassname());
-			}
-			for (final Map.Entry<String, DotAutocompletions> e: scope.imports.entrySet()) {
-				if (e.getKey().startsWith(name)) completions.put(e.getKey(), e.getValue().getClassname());
-			}
-			for (String builtinName: indexer.getBindings().keySet()) {
-				if (builtinName.startsWith("__builtin__."))
-					builtinName = builtinName.substring(12); // without the "__builtin__." prefix
-				if (builtinName.startsWith(name)) completions.put(builtinName, null);
+		for (final String builtinName: startingWith(getBuiltinNames(), name))
+			completions.put(builtinName, null);
+		for (final Map.Entry<String, DotAutocompletions> e: startingWith(getVisibleNames(), name).entrySet())
+			completions.put(e.getKey(), e.getValue().getClassname());
+		return completions;
+	}
+	
+	static private NavigableSet<String> startingWith(final NavigableSet<String> names, final String prefix) {
+		return names.subSet(prefix, true, prefix + Character.MAX_VALUE, false);
+	}
+	
+	static private <V> NavigableMap<String, V> startingWith(final NavigableMap<String, V> names, final String prefix) {
+		return names.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+	}
+	
+	/** Names visible from this scope: vars shadow imports, and both shadow those of outer scopes. */
+	private volatile NavigableMap<String, DotAutocompletions> visibleNames = null,
+															  visibleVars = null,
+															  visibleImports = null;
+	
+	/**
+	 * @return All names visible from this scope, sorted, to query by prefix.
+	 *         Vars shadow imports, and inner scopes shadow outer scopes.
+	 *         Built on first use from the parent scope's table, and kept once this scope and its parents are frozen.
+	 */
+	public NavigableMap<String, DotAutocompletions> getVisibleNames() {
+		NavigableMap<String, DotAutocompletions> names = this.visibleNames;
+		if (null == names) {
+			parseDeferredBody();
+			final TreeMap<String, DotAutocompletions> m = null == this.parent ? new TreeMap<>() : new TreeMap<>(this.parent.getVisibleNames());
+			m.putAll(this.imports);
+			m.putAll(this.vars);
+			names = Collections.unmodifiableNavigableMap(m);
+			if (isSettled()) this.visibleNames = names;
+		}
+		return names;
+	}
+	
+	private NavigableMap<String, DotAutocompletions> getVisibleVars() {
+		NavigableMap<String, DotAutocompletions> names = this.visibleVars;
+		if (null == names) {
+			parseDeferredBody();
+			final TreeMap<String, DotAutocompletions> m = null == this.parent ? new TreeMap<>() : new TreeMap<>(this.parent.getVisibleVars());
+			m.putAll(this.vars);
+			names = Collections.unmodifiableNavigableMap(m);
+			if (isSettled()) this.visibleVars = names;
+		}
+		return names;
+	}
+	
+	private NavigableMap<String, DotAutocompletions> getVisibleImports() {
+		NavigableMap<String, DotAutocompletions> names = this.visibleImports;
+		if (null == names) {
+			parseDeferredBody();
+			final TreeMap<String, DotAutocompletions> m = null == this.parent ? new TreeMap<>() : new TreeMap<>(this.parent.getVisibleImports());
+			m.putAll(this.imports);
+			names = Collections.unmodifiableNavigableMap(m);
+			if (isSettled()) this.visibleImports = names;
+		}
+		return names;
+	}
+	
+	/** @return Whether this scope and its parents are frozen and parsed, so that views of their names can be kept. */
+	private boolean isSettled() {
+		for (Scope scope = this; null != scope; scope = scope.parent)
+			if (!scope.frozen || null != scope.deferredBody) return false;
+		return true;
+	}
+	
+	static private NavigableSet<String> builtinNames = Collections.emptyNavigableSet();
+	static private int builtinBindingsCount = -1;
+	
+	/**
+	 * @return The names of the indexer's bindings, without the "__builtin__." prefix for python builtins.
+	 *         Rebuilt only when the number of bindings changes, e.g. when a module is loaded.
+	 */
+	static private synchronized NavigableSet<String> getBuiltinNames() {
+		synchronized (indexer) {
+			final Map<String, ?> bindings = indexer.getBindings();
+			if (bindings.size() != builtinBindingsCount) {
+				final TreeSet<String> names = new TreeSet<>();
+				for (final String builtinName: bindings.keySet())
+					names.add(builtinName.startsWith("__builtin__.") ?
+							builtinName.substring(12) // without the "__builtin__." prefix
+							: builtinName);
+				builtinNames = Collections.unmodifiableNavigableSet(names);
+				builtinBindingsCount = bindings.size();
 			}
-			scope = scope.parent;
 		}
-		return completions;
+		return builtinNames;
 	}
 	
 
 	/** Find vars by type, recursively upstream the nested scopes, listing first those of the innermost scope.
+	 * Uses, for each scope, an index of variable names by class name, and a cache of which class names
+	 * are assignable to which parameter types.
 	 *
-	 * @param clazz
+	 * @param type The type of a parameter, e.g. "int" or "ij.ImagePlus".
+	 * @param clazz The class for {@code type}, with primitives boxed.
 	 */
 	public Stream<String> findVarsByType(final String type, final Class<?> clazz) {
-		Stream<String> varNames = new ArrayList<String>().stream();
+		final List<String> varNames = new ArrayList<>();
+		JythonDev.printTrace((t, c) -> "Scope.findVarsByType: searching for type " + t + " and class " + c.getCanonicalName(), type, clazz);
 		Scope scope = this;
-		JythonDev.printTrace("Scope.findVarsByType: searching for type " + type + " and class " + clazz.getCanonicalName());
 		while (null != scope) {
-			varNames = Stream.concat(varNames,
-					scope.vars.entrySet().stream()
-						.filter(e -> {
-							try {
-								JythonDev.printTrace("Scope.findVarsByType, testing: " + e.getKey() + " :: " + e.getValue() + " with class " + e.getValue().getClassname());
-								if (e.getKey().startsWith("____")) return false; // injected variables in JythonAutoCompletions.completionsFor
-								final String classname = e.getValue().getClassname();
-								if (null == classname) return false;
-								if (type.equals(classname)) {
-									JythonDev.printTrace("type == classname: " + type);
-									return true;
-								}
-								// Handle compatible numeric arguments
-								if (Number.class.isAssignableFrom(clazz)) {
-									// Python only has long or float
-									if (classname.equals("float")) {
-										return true; // all numeric types will fit
-									}
-									if (classname.equals("long")) {
-										// or "long", but that was exact-matched earlier
-										return type.equals("int")
-												|| type.equals("short")
-												|| type.equals("byte")
-												|| clazz.isAssignableFrom(Long.class)
-												|| clazz.isAssignableFrom(Integer.class)
-												|| clazz.isAssignableFrom(Short.class)
-												|| clazz.isAssignableFrom(Byte.class);
-									}
-								}
-								// Fix class when it's a primitive number
-								Class<?> c = null;
-								switch (classname) {
-								case "long": c = Long.class; break;
-								case "float": c = Float.class; break;
-								default: c = Class.forName(classname);
-								}
-								// Search for subclass or interface
-								return clazz.isAssignableFrom(c);
-								
-								// TODO: search for methods of non-matching classes that return a matching type
-								
-							} catch (ClassNotFoundException e1) {
-								JythonDev.print("Cannot load class " + e.getValue(), e1);
-							}
-							return false;
-						})
-						.map(e -> e.getKey()));
+			for (final Map.Entry<String, List<String>> e: scope.getVarsByClassname().entrySet()) {
+				if (type.equals(e.getKey()) || isAssignable(clazz, e.getKey()))
+					varNames.addAll(e.getValue());
+			}
 			scope = scope.parent;
 		}
-		return varNames;
+		return varNames.stream();
 	}
 	
+	/** Variable names by class name, excluding variables of unknown class. Built on first use, and kept once frozen. */
+	private volatile Map<String, List<String>> varsByClassname = null;
 	
-	public HashMap<String, DotAutocompletions> getImports() {
-		final HashMap<String, DotAutocompletions> imports = new HashMap<>(this.imports);
-		Scope parent = this.parent;
-		while (parent != null) {
-			imports.putAll(parent.getImports());
-			parent = parent.parent;
+	private Map<String, List<String>> getVarsByClassname() {
+		Map<String, List<String>> index = this.varsByClassname;
+		if (null == index) {
+			parseDeferredBody();
+			index = new HashMap<>();
+			for (final Map.Entry<String, DotAutocompletions> e: this.vars.entrySet()) {
+				if (e.getKey().startsWith("____")) continue; // injected variables in JythonAutoCompletions.completionsFor
+				final String classname = e.getValue().getClassname();
+				if (null == classname) continue;
+				index.computeIfAbsent(classname, k -> new ArrayList<>()).add(e.getKey());
+			}
+			if (this.frozen && null == this.deferredBody) this.varsByClassname = index;
 		}
-		return imports;
+		return index;
 	}
 	
-	public HashMap<String, DotAutocompletions> getVars() {
-		final HashMap<String, DotAutocompletions> vars = new HashMap<>(this.vars);
-		Scope parent = this.parent;
-		while (parent != null) {
-			vars.putAll(parent.getVars());
-			parent = parent.parent;
+	/** For each parameter class, whether a variable of a given class name can be passed as that parameter. */
+	static private final ClassValue<Map<String, Boolean>> assignable = new ClassValue<Map<String, Boolean>>() {
+		@Override
+		protected Map<String, Boolean> computeValue(final Class<?> clazz) {
+			return new ConcurrentHashMap<>();
 		}
-		return vars;
+	};
+	
+	/**
+	 * Whether a variable with class {@code classname} fits a parameter of class {@code clazz}; cached,
+	 * except for classes that can't be loaded, which may be loadable later.
+	 */
+	static boolean isAssignable(final Class<?> clazz, final String classname) {
+		final Boolean b = assignable.get(clazz).computeIfAbsent(classname, k -> {
+			// Handle compatible numeric arguments
+			if (Number.class.isAssignableFrom(clazz)) {
+				// Python only has long or float
+				if (classname.equals("float") || classname.equals("double")) {
+					return true; // all numeric types will fit
+				}
+				if (classname.equals("long")) {
+					return clazz.isAssignableFrom(Long.class)
+							|| clazz.isAssignableFrom(Integer.class)
+							|| clazz.isAssignableFrom(Short.class)
+							|| clazz.isAssignableFrom(Byte.class);
+				}
+			}
+			// Fix class when it's a primitive number
+			try {
+				final Class<?> c;
+				switch (classname) {
+				case "long": c = Long.class; break;
+				case "float": c = Float.class; break;
+				case "double": c = Double.class; break;
+				default: c = Class.forName(classname);
+				}
+				// Search for subclass or interface
+				return clazz.isAssignableFrom(c);
+				
+				// TODO: search for methods of non-matching classes that return a matching type
+				
+			} catch (ClassNotFoundException e1) {
+				JythonDev.print(() -> "Cannot load class " + classname, e1);
+			}
+			return null; // not cached
+		});
+		return null != b && b;
+	}
+	
+	
+	public HashMap<String, DotAutocompletions> getImports() {
+		return new HashMap<>(getVisibleImports());
+	}
+	
+	public HashMap<String, DotAutocompletions> getVars() {
+		return new HashMap<>(getVisibleVars());
 	}
 	
 	public boolean isClass() {
 		return this.className != null;
 	}
 	
+	/** @return The innermost last scope, where the caret is, parsing its deferred body and those of its enclosing scopes if needed. */
 	public Scope getLast() {
+		parseDeferredBody();
 		if (children.isEmpty()) return this;
 		return children.get(children.size() -1).getLast();
 	}
@@ -317,6 +640,7 @@ public class Scope {
 		if ("" == indent) {
 			System.out.println("scope global:");
 		}
+		parseDeferredBody();
 		System.out.println(indent + "available imports: " + String.join(", ", this.getImports().keySet()));
 		System.out.println(indent + "declared imports:");
 		for (final Map.Entry<String, DotAutocompletions> e: imports.entrySet())
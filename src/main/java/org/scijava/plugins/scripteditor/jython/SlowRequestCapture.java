@@ -0,0 +1,266 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.scijava.plugins.scripteditor.jython.CompletionMetrics.Counter;
+import org.scijava.plugins.scripteditor.jython.CompletionMetrics.Histogram;
+import org.scijava.plugins.scripteditor.jython.CompletionMetrics.Phase;
+
+/**
+ * Saves a bundle to reproduce a completion request that took longer than {@link #thresholdMillis}:
+ * its code, the python load path, the time spent in each {@link Phase} and the cache counts during the request,
+ * and samples of the stack of the thread that ran it, taken from when it went over the threshold.
+ * Replay a bundle with {@link #replay(File)}, or by running this class with the bundle files as arguments.
+ * 
+ * Off unless {@link #directory} is set, e.g. with -Dscijava.jython.slowRequests=/path/to/dir
+ * Once the bundles in the directory add up to more than {@link #maxBytes}, the oldest ones are deleted.
+ * 
+ * As in {@link KeystrokeTrace}, the letters and digits within string literals and comments are anonymized.
+ * 
+ * Each line of a bundle is a field: a name, a tab, and values separated by tabs, with text escaped (see {@link KeystrokeTrace#escape(String)}):
+ * millis, kind, alreadyEnteredText, codeWithoutLastLine and lastLine: the request;
+ * path dir: an entry of the python load path;
+ * phase name count millis: a {@link Phase}, how many times it was measured and how long it took in total;
+ * counter name count: the increment of a {@link Counter};
+ * sample millis stack: the stack, with a frame per line, at some milliseconds since the request started.
+ */
+public class SlowRequestCapture
+{
+	static public final String HEADER = "# jython slow completion 1";
+	static private final String PREFIX = "jython-slow-";
+	
+	/** The directory where to write the bundles, or null to not capture anything. */
+	static public File directory = null == System.getProperty("scijava.jython.slowRequests") ? null : new File(System.getProperty("scijava.jython.slowRequests"));
+	
+	/** Requests that take longer than this are captured. */
+	static public long thresholdMillis = Long.getLong("scijava.jython.slowRequests.threshold", 100);
+	
+	/** How often to sample the stack of a slow request. */
+	static public long sampleIntervalMillis = 10;
+	
+	/** The maximum number of stack samples per bundle. */
+	static public int maxSamples = 100;
+	
+	/** The maximum size of all bundles in the {@link #directory}, in bytes. */
+	static public long maxBytes = 50 * 1024 * 1024;
+	
+	static private final AtomicInteger count = new AtomicInteger();
+	
+	/** Samples the stacks, and writes the bundles, away from the thread that runs the requests. */
+	static private final ScheduledThreadPoolExecutor sampler = new ScheduledThreadPoolExecutor(1, r -> {
+		final Thread t = new Thread(r, "Jython slow completion sampler");
+		t.setDaemon(true);
+		return t;
+	});
+	static {
+		sampler.setRemoveOnCancelPolicy(true); // most requests end before sampling starts
+	}
+	
+	private final Thread thread = Thread.currentThread();
+	private final long start = System.nanoTime();
+	private final String codeWithoutLastLine, lastLine, alreadyEnteredText;
+	private final long[] phaseCounts = new long[Phase.values().length],
+	                     phaseNanos = new long[Phase.values().length],
+	                     counters = new long[Counter.values().length];
+	private final List<String> samples = new ArrayList<>();
+	private final ScheduledFuture<?> sampling;
+	
+	private SlowRequestCapture(final String codeWithoutLastLine, final String lastLine, final String alreadyEnteredText) {
+		this.codeWithoutLastLine = codeWithoutLastLine;
+		this.lastLine = lastLine;
+		this.alreadyEnteredText = alreadyEnteredText;
+		final CompletionMetrics metrics = CompletionMetrics.get();
+		for (final Phase phase: Phase.values()) {
+			final Histogram h = metrics.getHistogram(phase);
+			this.phaseCounts[phase.ordinal()] = h.count.sum();
+			this.phaseNanos[phase.ordinal()] = h.total.sum();
+		}
+		for (final Counter counter: Counter.values())
+			this.counters[counter.ordinal()] = metrics.getCounter(counter);
+		this.sampling = sampler.scheduleAtFixedRate(this::sample, thresholdMillis, Math.max(1, sampleIntervalMillis), TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Start watching a completion request, run by the calling thread, if a {@link #directory} is set.
+	 * 
+	 * @return The capture, to {@link #end(String)} when the request ends, or null if not capturing.
+	 */
+	static public SlowRequestCapture begin(final String codeWithoutLastLine, final String lastLine, final String alreadyEnteredText) {
+		if (null == directory) return null;
+		return new SlowRequestCapture(codeWithoutLastLine, lastLine, alreadyEnteredText);
+	}
+	
+	private void sample() {
+		final StackTraceElement[] stack = this.thread.getStackTrace();
+		final long millis = (System.nanoTime() - this.start) / 1000000;
+		synchronized (this.samples) {
+			if (this.samples.size() >= maxSamples) return;
+			final StringBuilder sb = new StringBuilder();
+			for (final StackTraceElement frame: stack)
+				sb.append(frame).append('\n');
+			this.samples.add(millis + "\t" + KeystrokeTrace.escape(sb.toString()));
+		}
+	}
+	
+	/**
+	 * Stop watching the request, and save a bundle if it took longer than {@link #thresholdMillis}.
+	 * 
+	 * @param kind The kind of completion, e.g. "dot", or null if unknown.
+	 */
+	public void end(final String kind) {
+		final long nanos = System.nanoTime() - this.start;
+		this.sampling.cancel(false);
+		if (nanos < thresholdMillis * 1000000) return;
+		final CompletionMetrics metrics = CompletionMetrics.get();
+		for (final Phase phase: Phase.values()) {
+			final Histogram h = metrics.getHistogram(phase);
+			this.phaseCounts[phase.ordinal()] = h.count.sum() - this.phaseCounts[phase.ordinal()];
+			this.phaseNanos[phase.ordinal()] = h.total.sum() - this.phaseNanos[phase.ordinal()];
+		}
+		for (final Counter counter: Counter.values())
+			this.counters[counter.ordinal()] = metrics.getCounter(counter) - this.counters[counter.ordinal()];
+		final List<String> loadPath = Scope.getLoadPath();
+		sampler.execute(() -> write(nanos, null == kind ? "none" : kind, loadPath));
+	}
+	
+	private void write(final long nanos, final String kind, final List<String> loadPath) {
+		final File dir = directory;
+		if (null == dir) return;
+		try {
+			dir.mkdirs();
+			final File file = new File(dir, PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+					+ "-" + count.incrementAndGet() + ".txt");
+			try (final BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+				writer.write(HEADER);
+				writer.newLine();
+				line(writer, "millis", String.format("%.3f", nanos / 1e6));
+				line(writer, "kind", kind);
+				line(writer, "alreadyEnteredText", KeystrokeTrace.escape(this.alreadyEnteredText));
+				line(writer, "codeWithoutLastLine", KeystrokeTrace.anonymize(this.codeWithoutLastLine, ""));
+				line(writer, "lastLine", KeystrokeTrace.anonymize(this.lastLine, ""));
+				for (final String dirPath: loadPath)
+					line(writer, "path", KeystrokeTrace.escape(dirPath));
+				for (final Phase phase: Phase.values())
+					line(writer, "phase", phase.name(), Long.toString(this.phaseCounts[phase.ordinal()]),
+							String.format("%.3f", this.phaseNanos[phase.ordinal()] / 1e6));
+				for (final Counter counter: Counter.values())
+					line(writer, "counter", counter.name(), Long.toString(this.counters[counter.ordinal()]));
+				synchronized (this.samples) {
+					for (final String sample: this.samples)
+						line(writer, "sample", sample);
+				}
+			}
+			JythonDev.print(() -> "Saved slow completion request to " + file);
+			rotate(dir);
+		} catch (final IOException e) {
+			JythonDev.print("Could not save slow completion request", e);
+		}
+	}
+	
+	static private void line(final BufferedWriter writer, final String... fields) throws IOException {
+		writer.write(String.join("\t", fields));
+		writer.newLine();
+	}
+	
+	/** Delete the oldest bundles until all add up to no more than {@link #maxBytes}, keeping at least the newest. */
+	static private void rotate(final File dir) {
+		final File[] bundles = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(".txt"));
+		if (null == bundles) return;
+		Arrays.sort(bundles, Comparator.comparingLong(File::lastModified).reversed());
+		long bytes = 0;
+		for (int i=0; i<bundles.length; ++i) {
+			bytes += bundles[i].length();
+			if (i > 0 && bytes > maxBytes && !bundles[i].delete())
+				JythonDev.print(f -> "Could not delete " + f, bundles[i]);
+		}
+	}
+	
+	/**
+	 * Run the request of a bundle again, without a text area, after adding its load path to the python indexer.
+	 * 
+	 * @param bundle A file saved by {@link SlowRequestCapture}.
+	 * @return How long the request took, in nanoseconds.
+	 * @throws IOException If the file can't be read or isn't a bundle.
+	 */
+	static public long replay(final File bundle) throws IOException {
+		String codeWithoutLastLine = "", lastLine = "", alreadyEnteredText = "";
+		try (final BufferedReader reader = Files.newBufferedReader(bundle.toPath(), StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine()))
+				throw new IOException("Not a slow completion bundle: " + bundle);
+			for (String line = reader.readLine(); null != line; line = reader.readLine()) {
+				final String[] fields = line.split("\t", -1);
+				if (fields.length < 2) continue;
+				switch (fields[0]) {
+					case "codeWithoutLastLine": codeWithoutLastLine = KeystrokeTrace.unescape(fields[1]); break;
+					case "lastLine": lastLine = KeystrokeTrace.unescape(fields[1]); break;
+					case "alreadyEnteredText": alreadyEnteredText = KeystrokeTrace.unescape(fields[1]); break;
+					case "path":
+						final String dir = KeystrokeTrace.unescape(fields[1]);
+						if (new File(dir).isDirectory())
+							Scope.addLoadPath(dir);
+						break;
+					default: // the measurements are for reading
+						break;
+				}
+			}
+		}
+		final JythonAutocompletionProvider provider = new JythonAutocompletionProvider(null, null);
+		final long start = System.nanoTime();
+		provider.getCompletionsAt(codeWithoutLastLine + lastLine, alreadyEnteredText);
+		return System.nanoTime() - start;
+	}
+	
+	static public void main(final String[] args) {
+		for (final String path: args) {
+			try {
+				System.out.println(String.format("%s: %.2f ms", path, replay(new File(path)) / 1e6));
+			} catch (final IOException e) {
+				System.out.println("Could not replay " + path + ": " + e.getMessage());
+			}
+		}
+		System.exit(0); // the python module watcher thread of Scope doesn't end on its own
+	}
+}
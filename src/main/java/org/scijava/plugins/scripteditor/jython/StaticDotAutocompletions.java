@@ -48,27 +48,28 @@ public class StaticDotAutocompletions implements DotAutocompletions
 	}
 	@Override
 	public List<CompletionText> get() {
-		final List<CompletionText> ac = new ArrayList<>();
+		return getMembers().stream().map(m -> m.ct).collect(Collectors.toList());
+	}
+	
+	@Override
+	public List<MemberDescriptor> getMembers() {
+		final List<MemberDescriptor> ac = new ArrayList<>();
 		if (null != this.className) {
-			String msg = "";
 			try {
 				// Check first if it's a python module
 				final NModuleType module = Scope.loadPythonModule(this.className); // Scope.indexer.getBuiltinModule(this.className);
-				JythonDev.printTrace("module is: " + module);
+				JythonDev.printTrace(module);
 				if (null != module) {
-					module.getTable().keySet().forEach( m -> ac.add(new CompletionText(m)));
+					module.getTable().keySet().forEach( m -> ac.add(new MemberDescriptor(new CompletionText(m))));
 					// Not need to remove: a file system watcher will do so when the module file is updated or deleted.
 					// Scope.indexer.moduleTable.remove(this.className);
 					return ac;
-				} else {
-					msg += "Not a python module: " + this.className;
 				}
-				// Or a java class:
+				// Or a java class: its static members are cached
 				try {
-					DotAutocompletions.staticFieldsAndStaticMethodsInto(Class.forName(this.className), ac);
-					return ac;
+					return MemberDescriptor.staticMembersOf(Class.forName(this.className));
 				} catch (ClassNotFoundException cnfe) {
-					msg += "\nCannot find java class " + this.className;
+					// Not a java class
 				}
 				// Or a static method of a java class
 				try {
@@ -81,18 +82,15 @@ public class StaticDotAutocompletions implements DotAutocompletions
 							.map(m -> m.getReturnType())
 							.distinct()
 							.collect(Collectors.toList())) {
-						DotAutocompletions.fieldsAndMethodsInto(r, ac);
+						ac.addAll(MemberDescriptor.instanceMembersOf(r));
 					}
 					return ac;
 				} catch (ClassNotFoundException cnfe) {
-					msg += "\nCannot derive static method or field from " + this.className;
-				}
-				
-				if (null != msg) {
-					JythonDev.print(msg);
+					JythonDev.print(c -> "Not a python module: " + c + "\nCannot find java class " + c
+							+ "\nCannot derive static method or field from " + c, this.className);
 				}
 			} catch (Exception e) {
-				JythonDev.print(msg, e);
+				JythonDev.print(() -> "Cannot find members of " + this.className, e);
 			}
 		}
 		return ac;
@@ -30,6 +30,7 @@ package org.scijava.plugins.scripteditor.jython;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -52,12 +53,24 @@ public class VarDotAutocompletions implements DotAutocompletions {
 				final Class<?> c = Class.forName(className);
 				DotAutocompletions.fieldsAndMethodsInto(c, ac);
 			} catch (final Exception e) {
-				JythonDev.print("Could not load class " + className, e);
+				JythonDev.print(() -> "Could not load class " + className, e);
 			}
 		}
 		return ac;
 	}
 	
+	@Override
+	public List<MemberDescriptor> getMembers() {
+		if (null != className) {
+			try {
+				return MemberDescriptor.instanceMembersOf(Class.forName(className));
+			} catch (final Exception e) {
+				JythonDev.print(() -> "Could not load class " + className, e);
+			}
+		}
+		return Collections.emptyList();
+	}
+	
 	@Override
 	public Stream<CompletionText> getStream() {
 		try {
@@ -66,7 +79,7 @@ public class VarDotAutocompletions implements DotAutocompletions {
 					Arrays.stream(c.getFields()).map(f -> new CompletionText(f.getName(), c, f)),
 					Arrays.stream(c.getMethods()).map(m -> new CompletionText(m.getName(), c, m)));
 		} catch (final Exception e) {
-			JythonDev.print("Could not load class " + className, e);
+			JythonDev.print(() -> "Could not load class " + className, e);
 		}
 		return Stream.empty();
 	}
@@ -0,0 +1,75 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+/**
+ * Generates jython scripts of a given number of lines for the benchmarks,
+ * with imports of java classes and python modules, variables, functions and classes
+ * that completions can be computed for.
+ */
+public class BenchmarkScripts {
+	
+	static final String header = String.join("\n",
+			"from java.io import File",
+			"from java.util import ArrayList, HashMap",
+			"import os",
+			"");
+	
+	/** Each block defines names suffixed with its index, e.g. "list0", "createList0", "Volume0". */
+	static final String block = String.join("\n",
+			"list%1$d = ArrayList()",
+			"table%1$d = HashMap()",
+			"f%1$d = File('/tmp/%1$d.txt')",
+			"def createList%1$d(n):",
+			"  ls = ArrayList(n)",
+			"  return ls",
+			"class Volume%1$d(ArrayList):",
+			"  def __init__(self, n):",
+			"    self.n = n",
+			"  def getN(self):",
+			"    return self.n",
+			"");
+	
+	static final int HEADER_LINES = 3,
+	                 BLOCK_LINES = 11;
+	
+	/**
+	 * @param lines The number of lines of the script, at least those of the header.
+	 * @return The script, ending with a line break.
+	 */
+	static public String generate(final int lines) {
+		final StringBuilder sb = new StringBuilder(header);
+		final int n = Math.max(1, (lines - HEADER_LINES) / BLOCK_LINES);
+		for (int i=0; i<n; ++i)
+			sb.append(String.format(block, i));
+		for (int i = HEADER_LINES + n * BLOCK_LINES; i < lines; ++i)
+			sb.append("# padding\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.scijava.ui.swing.script.autocompletion.CompletionText;
+
+public class ClassHierarchyTest {
+	
+	/** A python class with the given superclasses, all python classes, and members. */
+	static private ClassDotAutocompletions pyClass(final String name, final List<ClassDotAutocompletions> bases, final String... members) {
+		final List<String> superclassNames = new ArrayList<>();
+		final Map<String, ClassDotAutocompletions> localSuperclasses = new HashMap<>();
+		for (final ClassDotAutocompletions base: bases) {
+			superclassNames.add(base.fnName);
+			localSuperclasses.put(base.fnName, base);
+		}
+		return new ClassDotAutocompletions(name, superclassNames, localSuperclasses, new ArrayList<>(),
+				Arrays.stream(members).map(CompletionText::new).collect(Collectors.toList()), null);
+	}
+	
+	static private List<String> names(final List<MemberDescriptor> members) {
+		return members.stream().map(m -> m.name).collect(Collectors.toList());
+	}
+	
+	/** The C3 linearization, as in python: the diamond D(B, C) with B(A) and C(A). */
+	@Test
+	public void testLinearization() {
+		final ClassDotAutocompletions a = pyClass("A", Collections.emptyList(), "a", "x"),
+		                              b = pyClass("B", Arrays.asList(a), "b", "x"),
+		                              c = pyClass("C", Arrays.asList(a), "c", "x"),
+		                              d = pyClass("D", Arrays.asList(b, c), "d");
+		assertEquals("Linearization of D", Arrays.asList(d, b, c, a), d.getLinearization());
+		// Overridden members are listed once, from the first class in the linearization that has them
+		assertEquals("Members of D", Arrays.asList("d", "b", "x", "c", "a"), names(d.getMembers()));
+		// A longer one: python's own example, O being the implicit base
+		final ClassDotAutocompletions o = pyClass("O", Collections.emptyList()),
+		                              f = pyClass("F", Arrays.asList(o)),
+		                              e = pyClass("E", Arrays.asList(o)),
+		                              dd = pyClass("DD", Arrays.asList(o)),
+		                              cc = pyClass("CC", Arrays.asList(dd, f)),
+		                              bb = pyClass("BB", Arrays.asList(dd, e)),
+		                              aa = pyClass("AA", Arrays.asList(bb, cc));
+		assertEquals("Linearization of AA", Arrays.asList(aa, bb, cc, dd, e, f, o), aa.getLinearization());
+	}
+	
+	/** Without a consistent order, e.g. X(A, B) with B(A), the superclasses are listed depth-first, each once. */
+	@Test
+	public void testInconsistentHierarchy() {
+		final ClassDotAutocompletions a = pyClass("A", Collections.emptyList(), "a"),
+		                              b = pyClass("B", Arrays.asList(a), "b"),
+		                              x = pyClass("X", Arrays.asList(a, b), "x");
+		assertEquals("Linearization of X", Arrays.asList(x, a, b), x.getLinearization());
+		assertEquals("Members of X", Arrays.asList("x", "a", "b"), names(x.getMembers()));
+	}
+	
+	/** Java superclasses are listed by name, with their public members. */
+	@Test
+	public void testJavaSuperclass() {
+		final ClassDotAutocompletions a = new ClassDotAutocompletions("A", Arrays.asList("java.util.ArrayList"), new ArrayList<>(),
+				new ArrayList<>(Arrays.asList(new CompletionText("a"))), null);
+		assertEquals("Linearization of A", Arrays.asList(a, "java.util.ArrayList"), a.getLinearization());
+		assertTrue("Expected the members of A and of ArrayList: " + names(a.getMembers()),
+				names(a.getMembers()).contains("a") && names(a.getMembers()).stream().anyMatch(s -> s.startsWith("add")));
+	}
+	
+	/** Superclasses as found by the parser: python classes of the same file, imported java classes, and unknown ones skipped. */
+	@Test
+	public void testPythonSuperclasses() {
+		final Scope scope = OutlineParser.parse(String.join("\n",
+				"from java.util import ArrayList",
+				"class Base:",
+				"  def foo(self):",
+				"    pass",
+				"class Sub(Base):",
+				"  def bar(self):",
+				"    pass",
+				"class Items(ArrayList):",
+				"  def first(self):",
+				"    return self.get(0)",
+				"class Missing(Unknown):",
+				"  pass",
+				""));
+		final ClassDotAutocompletions base = (ClassDotAutocompletions)scope.vars.get("Base"),
+		                              sub = (ClassDotAutocompletions)scope.vars.get("Sub"),
+		                              items = (ClassDotAutocompletions)scope.vars.get("Items"),
+		                              missing = (ClassDotAutocompletions)scope.vars.get("Missing");
+		assertEquals("Linearization of Sub", Arrays.asList(sub, base), sub.getLinearization());
+		assertEquals("Members of Sub", Arrays.asList("bar", "foo"), names(sub.getMembers()));
+		assertEquals("Linearization of Items", Arrays.asList(items, "java.util.ArrayList"), items.getLinearization());
+		assertEquals("Linearization of Missing", Collections.singletonList(missing), missing.getLinearization());
+		// "self" within a method completes with the members of the class and of its superclasses
+		final DotAutocompletions self = ((DefVarDotAutocompletions)sub.scope.vars.get("bar")).scope.vars.get("self");
+		final List<String> selfNames = self.getMembers().stream().map(m -> m.name).collect(Collectors.toList());
+		assertTrue("self. should offer bar and foo: " + selfNames, selfNames.contains("bar") && selfNames.contains("foo"));
+	}
+}
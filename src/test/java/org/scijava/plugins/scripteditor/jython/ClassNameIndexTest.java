@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ClassNameIndexTest {
+	
+	private final ClassNameIndex index = new ClassNameIndex(Stream.of(
+			"ij.ImagePlus",
+			"ij.process.ImageProcessor",
+			"ij.process.ByteProcessor",
+			"ij.gui.ImageWindow",
+			"ij.io.FileInfo",
+			"java.awt.Image",
+			"a.ImportProcess",
+			"b.SimpleImage",
+			"c.Outer$Inner"));
+	
+	static private void assertFind(final ClassNameIndex index, final String query, final int maxResults, final String... expected) {
+		assertEquals("For '" + query + "'", Arrays.asList(expected), index.find(query, maxResults));
+	}
+	
+	@Test
+	public void testInnerClassesIgnored() {
+		assertEquals("Inner classes should be ignored", 8, index.size());
+		assertFind(index, "Inner", 10);
+	}
+	
+	@Test
+	public void testPrefixThenSubstring() {
+		// Case-sensitive prefix matches, shorter simple names first
+		assertFind(index, "Im", 10, "java.awt.Image", "ij.ImagePlus", "ij.gui.ImageWindow", "a.ImportProcess", "ij.process.ImageProcessor");
+		// Then substring matches
+		assertFind(index, "Image", 10, "java.awt.Image", "ij.ImagePlus", "ij.gui.ImageWindow", "ij.process.ImageProcessor", "b.SimpleImage");
+		assertFind(index, "image", 10, "java.awt.Image", "ij.ImagePlus", "ij.gui.ImageWindow", "ij.process.ImageProcessor", "b.SimpleImage");
+		// Substrings, alphabetically among names of the same length
+		assertFind(index, "process", 10, "ij.process.ByteProcessor", "a.ImportProcess", "ij.process.ImageProcessor");
+	}
+	
+	@Test
+	public void testCamelHumps() {
+		// Each a prefix of a hump of the name
+		assertFind(index, "IP", 10, "ij.ImagePlus", "a.ImportProcess", "ij.process.ImageProcessor");
+		assertFind(index, "ImPr", 10, "a.ImportProcess", "ij.process.ImageProcessor");
+		// Listed once, when in the range of the humps but matching only as a substring
+		assertFind(new ClassNameIndex(Stream.of("x.ImagePlusIpi")), "IPi", 10, "x.ImagePlusIpi");
+	}
+	
+	@Test
+	public void testBestOnly() {
+		assertFind(index, "Image", 2, "java.awt.Image", "ij.ImagePlus");
+		final List<String> found = index.find("", 10);
+		assertTrue("An empty query should find nothing: " + found, found.isEmpty());
+	}
+}
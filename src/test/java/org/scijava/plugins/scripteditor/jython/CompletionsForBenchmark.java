@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.fife.ui.autocomplete.Completion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link JythonAutoCompletions#completionsFor(JythonAutocompletionProvider, String, String, String)}
+ * headlessly, as when typing the last line of scripts of 100, 1000 and 10000 lines,
+ * for each kind of completion, and with or without an edit near the top of the script between calls.
+ * 
+ * Run with the test classpath, e.g. from the IDE, or with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.scijava.plugins.scripteditor.jython.CompletionsForBenchmark
+ * 
+ * Reports throughput, the latency distribution and, with the GC profiler, the allocation rate.
+ * Any arguments are passed on to JMH, e.g. "-p lines=1000".
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompletionsForBenchmark {
+	
+	@Param({"100", "1000", "10000"})
+	public int lines;
+	
+	/** The kind of completion, see {@link #lastLineFor(String)}. */
+	@Param({"import", "member_import", "name", "invocation", "dot", "chained_dot"})
+	public String kind;
+	
+	/**
+	 * Whether each call sees code edited near the top, right after the imports, as when typing in an earlier line
+	 * so that all statements after the edit are parsed again; or the same code, as when typing in the last line.
+	 */
+	@Param({"false", "true"})
+	public boolean edited;
+	
+	private JythonAutocompletionProvider provider;
+	private JythonAutoCompletions autoCompletions;
+	private String code, lastLine, alreadyEnteredText;
+	private int edits = 0;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		this.provider = new JythonAutocompletionProvider(null, null);
+		this.autoCompletions = new JythonAutoCompletions();
+		this.code = BenchmarkScripts.generate(this.lines);
+		this.lastLine = lastLineFor(this.kind);
+		this.alreadyEnteredText = alreadyEnteredText(this.lastLine);
+	}
+	
+	static String lastLineFor(final String kind) {
+		switch (kind) {
+			case "import": return "import o";
+			case "member_import": return "from os import pa";
+			case "name": return "x = cre";
+			case "invocation": return "x = createList0(";
+			case "dot": return "list0.ad";
+			case "chained_dot": return "name = f0.getParentFile().getAbsoluteFile().getNa";
+			default: throw new IllegalArgumentException("Unknown kind of completion: " + kind);
+		}
+	}
+	
+	/** As {@code JythonAutocompletionProvider.getAlreadyEnteredText} would, given its {@code isValidChar}. */
+	static String alreadyEnteredText(final String lastLine) {
+		int i = lastLine.length();
+		while (i > 0) {
+			final char c = lastLine.charAt(i - 1);
+			if (!(Character.isLetterOrDigit(c) || '.' == c || ' ' == c)) break;
+			--i;
+		}
+		return lastLine.substring(i);
+	}
+	
+	/** Insert an assignment of {@code n} right after the imports of {@link BenchmarkScripts#header}. */
+	static String edit(final String code, final int n) {
+		final int at = BenchmarkScripts.header.length();
+		return code.substring(0, at) + "edit = " + n + "\n" + code.substring(at);
+	}
+	
+	@Benchmark
+	public List<Completion> completionsFor() {
+		final String code = this.edited ? edit(this.code, ++this.edits) : this.code;
+		return this.autoCompletions.completionsFor(this.provider, code, this.lastLine, this.alreadyEnteredText);
+	}
+	
+	static public void main(final String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(CompletionsForBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,232 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.fife.ui.autocomplete.Completion;
+
+/**
+ * Generates jython scripts of any size, e.g. 50000 lines, made of the constructs that {@link JythonScriptParser} handles:
+ * imports of java classes and of python standard library modules, classes with "self." attributes,
+ * nested function definitions, tuple assignments, chained method calls and "sys.path.append" lines.
+ * How often each construct appears is set by its weight.
+ * 
+ * Lines starting with "#> " embed the completions expected at that point, e.g. "#> ls3.ad -> add":
+ * when the code before that line is followed by a last line "ls3.ad", the completions must include "add".
+ * See {@link #check(String)}.
+ * 
+ * Unlike {@link BenchmarkScripts}, the order of the constructs is random, but the same for the same seed.
+ */
+public class JythonCorpus {
+	
+	static public final String EXPECT = "#> ";
+	
+	/** The number of lines of the script to generate. */
+	public int lines = 1000;
+	public long seed = 42;
+	
+	/** Weights of each construct: how often it appears relative to the others. */
+	public int javaImports = 2,
+	           moduleImports = 1,
+	           classes = 2,
+	           nestedDefs = 2,
+	           tuples = 2,
+	           chains = 2,
+	           sysPaths = 1;
+	
+	static private final String header = String.join("\n",
+			"import sys",
+			"from java.io import File",
+			"from java.util import ArrayList, HashMap",
+			"from java.awt import Rectangle",
+			"");
+	
+	/** Java classes to import, with a method of their instances. */
+	static private final String[][] javaClasses = {
+			{"java.util", "LinkedList", "addFirst"},
+			{"java.util", "TreeMap", "firstKey"},
+			{"java.lang", "StringBuilder", "append"},
+			{"java.awt", "Point", "getLocation"},
+			{"java.util.concurrent", "ConcurrentHashMap", "putIfAbsent"}
+	};
+	
+	/** Python standard library modules, with one of their functions. */
+	static private final String[][] modules = {
+			{"os", "getcwd"},
+			{"re", "compile"},
+			{"math", "sqrt"},
+			{"itertools", "chain"},
+			{"collections", "deque"}
+	};
+	
+	/** @return The script, ending with a line break. */
+	public String generate() {
+		final Random random = new Random(this.seed);
+		final int[] weights = {this.javaImports, this.moduleImports, this.classes, this.nestedDefs, this.tuples, this.chains, this.sysPaths};
+		int total = 0;
+		for (final int w: weights) total += Math.max(0, w);
+		final StringBuilder sb = new StringBuilder(header);
+		int n = countLines(header);
+		for (int i=0; total > 0; ++i) {
+			int r = random.nextInt(total), kind = 0;
+			while (r >= Math.max(0, weights[kind])) r -= Math.max(0, weights[kind++]);
+			final String block = block(kind, i, random);
+			final int blockLines = countLines(block);
+			if (n + blockLines > this.lines) break;
+			sb.append(block);
+			n += blockLines;
+		}
+		for (; n < this.lines; ++n)
+			sb.append("# padding\n");
+		return sb.toString();
+	}
+	
+	static private String block(final int kind, final int i, final Random random) {
+		switch (kind) {
+			case 0: {
+				final String[] c = javaClasses[random.nextInt(javaClasses.length)];
+				return lines(
+						"from " + c[0] + " import " + c[1],
+						"obj" + i + " = " + c[1] + "()",
+						EXPECT + "obj" + i + "." + c[2].substring(0, 3) + " -> " + c[2]);
+			}
+			case 1: {
+				final String[] m = modules[random.nextInt(modules.length)];
+				return lines(
+						"import " + m[0],
+						EXPECT + "from " + m[0] + " import " + m[1].substring(0, 2) + " -> " + m[1]);
+			}
+			case 2:
+				return lines(
+						"class Shape" + i + "(object):",
+						"  def __init__(self, w, h):",
+						"    self.width = w",
+						"    self.height = h",
+						"    self.bounds = Rectangle(0, 0, w, h)",
+						"  def area(self):",
+						"    return self.width * self.height",
+						"  def getBounds(self):",
+						"    return self.bounds",
+						"shape" + i + " = Shape" + i + "(2, 3)",
+						EXPECT + "s = Shape" + i + " -> Shape" + i);
+			case 3:
+				return lines(
+						"def outer" + i + "(n):",
+						"  def inner(m):",
+						"    ls = ArrayList(m)",
+						"    return ls",
+						"  return inner(n)",
+						"res" + i + " = outer" + i + "(3)",
+						EXPECT + "x = outer" + i + " -> outer" + i,
+						EXPECT + "res" + i + ".ad -> add");
+			case 4:
+				return lines(
+						"ls" + i + ", table" + i + " = ArrayList(), HashMap()",
+						EXPECT + "table" + i + ".pu -> put",
+						EXPECT + "ls" + i + ".ad -> add");
+			case 5:
+				return lines(
+						"f" + i + " = File('/tmp/corpus" + i + ".txt')",
+						"name" + i + " = f" + i + ".getParentFile().getAbsoluteFile().getName()",
+						EXPECT + "f" + i + ".getParentFile().getAbsoluteFile().getNa -> getName",
+						EXPECT + "name" + i + ".toUpp -> toUpperCase");
+			default:
+				return lines("sys.path.append('/tmp/jython-corpus/lib" + i + "')");
+		}
+	}
+	
+	static private String lines(final String... lines) {
+		return String.join("\n", lines) + "\n";
+	}
+	
+	static private int countLines(final String s) {
+		int n = 0;
+		for (int i = s.indexOf('\n'); -1 != i; i = s.indexOf('\n', i + 1)) ++n;
+		return n;
+	}
+	
+	/**
+	 * Check the completions expected in the code, in order, as when typing them.
+	 * 
+	 * @param code A script with lines starting with {@link #EXPECT}.
+	 * @return A description of each expectation that wasn't met; empty if all were.
+	 */
+	static public List<String> check(final String code) {
+		final JythonAutocompletionProvider provider = new JythonAutocompletionProvider(null, null);
+		final List<String> failures = new ArrayList<>();
+		int lineNumber = 0;
+		for (int start = 0, end; start < code.length(); start = end + 1) {
+			end = code.indexOf('\n', start);
+			if (-1 == end) end = code.length();
+			++lineNumber;
+			if (!code.startsWith(EXPECT, start)) continue;
+			final String expectation = code.substring(start + EXPECT.length(), end);
+			final int arrow = expectation.lastIndexOf(" -> ");
+			final String lastLine = expectation.substring(0, arrow),
+			             expected = expectation.substring(arrow + 4);
+			final String prefix = code.substring(0, start) + lastLine;
+			final List<Completion> completions = provider.getCompletionsAt(prefix, KeystrokeTraceReplayer.alreadyEnteredText(provider, prefix));
+			boolean found = false;
+			for (final Completion c: completions) {
+				if (c.getReplacementText().contains(expected)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found)
+				failures.add("line " + lineNumber + ": " + lastLine + " -> " + expected + " not among " + completions.size() + " completions");
+		}
+		return failures;
+	}
+	
+	/**
+	 * Generate a script, save it if a file is given, and check its expected completions.
+	 * 
+	 * @param args The number of lines (default 50000), the seed (default 42), and optionally the file to save the script to.
+	 */
+	static public void main(final String[] args) throws Exception {
+		final JythonCorpus corpus = new JythonCorpus();
+		corpus.lines = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		if (args.length > 1) corpus.seed = Long.parseLong(args[1]);
+		final String code = corpus.generate();
+		if (args.length > 2) Files.write(new File(args[2]).toPath(), code.getBytes(StandardCharsets.UTF_8));
+		final long start = System.currentTimeMillis();
+		final List<String> failures = check(code);
+		System.out.println("Checked " + corpus.lines + " lines in " + (System.currentTimeMillis() - start) + " ms");
+		failures.forEach(System.out::println);
+		System.out.println(failures.size() + " expectations not met");
+		System.exit(0); // the python module watcher thread of Scope doesn't end on its own
+	}
+}
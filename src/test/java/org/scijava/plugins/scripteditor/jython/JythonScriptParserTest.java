@@ -28,7 +28,14 @@
  */
 package org.scijava.plugins.scripteditor.jython;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
 import org.scijava.plugins.scripteditor.jython.JythonScriptParser;
+import org.scijava.ui.swing.script.autocompletion.CompletionText;
 
 public class JythonScriptParserTest {
 	
@@ -110,16 +117,118 @@ public class JythonScriptParserTest {
 			""
 			);
 	
+	static private void check(final boolean ok, final String msg) {
+		if (!ok) throw new AssertionError(msg);
+	}
+	
+	static private List<String> names(final Scope scope, final String name) {
+		return scope.find(name, DotAutocompletions.EMPTY).get().stream()
+				.map(CompletionText::getReplacementText).collect(Collectors.toList());
+	}
+	
+	/** Attributes assigned to an instance are completions of that variable, and never change its class. */
+	static void checkInstanceAttributes() {
+		final String classCode = String.join("\n",
+				"class A(object):",
+				"  def foo(self):",
+				"    return 1",
+				"");
+		// Parse the class alone first, so that the next parses reuse its syntax tree
+		JythonScriptParser.parseAST(classCode);
+		final Scope scope = JythonScriptParser.parseAST(classCode + "a = A()\na.bar = 2\n").getLast();
+		check(names(scope, "a").contains("bar"), "a. should offer bar: " + names(scope, "a"));
+		check(names(scope, "a").contains("foo"), "a. should offer foo: " + names(scope, "a"));
+		check(!names(scope, "A").contains("bar"), "A. shouldn't offer bar: " + names(scope, "A"));
+		// Parsed anew, the class isn't changed either, as seen by a later parse without the assignment
+		final String classCode2 = classCode.replace("class A", "class B");
+		JythonScriptParser.parseAST(classCode2 + "b = B()\nb.bar = 2\n");
+		final Scope scope2 = JythonScriptParser.parseAST(classCode2 + "b = B()\n").getLast();
+		check(!names(scope2, "b").contains("bar"), "b. shouldn't offer bar once the assignment is deleted: " + names(scope2, "b"));
+	}
+	
+	/** The outline of the code infers the same classes for its top-level names as the full parse. */
+	static void checkOutlineMatchesParse(final String code) {
+		final Scope parsed = JythonScriptParser.parseAST(code),
+		            outlined = OutlineParser.parse(code);
+		check(parsed.vars.keySet().equals(outlined.vars.keySet()), "same names: " + parsed.vars.keySet() + " vs " + outlined.vars.keySet());
+		for (final String name: parsed.vars.keySet()) {
+			final String a = parsed.vars.get(name).getClassname(),
+			             b = outlined.vars.get(name).getClassname();
+			check(Objects.equals(a, b), "same class for " + name + ": " + a + " vs outlined " + b);
+		}
+	}
+	
+	/** Names are resolved as bound at each statement, not as bound by later statements. */
+	static void checkReassignments() {
+		final String code = String.join("\n",
+				"from java.io import File",
+				"f = File('/tmp')",
+				"parent = f.getParentFile()",
+				"f = f.getName()",
+				"n = f.length()",
+				"");
+		final Scope scope = OutlineParser.parse(code);
+		check(File.class.getName().equals(scope.vars.get("parent").getClassname()), "parent should be a File: " + scope.vars.get("parent"));
+		check(String.class.getName().equals(scope.vars.get("f").getClassname()), "f should be a String: " + scope.vars.get("f"));
+		check("int".equals(scope.vars.get("n").getClassname()), "n should be an int: " + scope.vars.get("n"));
+		checkOutlineMatchesParse(code);
+	}
+	
+	/** Statements parsed concurrently start only where all brackets are closed, even if continued at column 0. */
+	static void checkTopLevelStatementLines() {
+		final String code = String.join("\n",
+				"from java.util import ArrayList",
+				"ls = ArrayList(",
+				"3)",
+				"n = 1",
+				"");
+		final int[] lines = OutlineParser.topLevelStatementLines(code, false);
+		check(Arrays.equals(new int[]{1, 2, 4}, lines), "statements should start at lines 1, 2 and 4: " + Arrays.toString(lines));
+		final int minLines = JythonScriptParser.PARALLEL_PARSE_MIN_LINES;
+		JythonScriptParser.PARALLEL_PARSE_MIN_LINES = 1;
+		try {
+			final Scope scope = JythonScriptParser.parseAST(code);
+			check(names(scope, "ls").contains("add"), "ls. should offer add: " + names(scope, "ls"));
+		} finally {
+			JythonScriptParser.PARALLEL_PARSE_MIN_LINES = minLines;
+		}
+	}
+	
+	/** A function body parsed lazily resolves its names against the code it was parsed with, not against a later parse that shares the function. */
+	static void checkLazyBodies() {
+		final String fnCode = String.join("\n",
+				"from java.io import File",
+				"def f():",
+				"  return x",
+				"");
+		final Scope first = JythonScriptParser.parseAST(fnCode + "x = File('/tmp')\n"),
+		            second = JythonScriptParser.parseAST(fnCode + "x = 'a'\n");
+		// The body of f in the first parse is parsed only now, after the second parse
+		final String a = first.find("f", null).getClassname(),
+		             b = second.find("f", null).getClassname();
+		check(File.class.getName().equals(a), "f should return a File in the first parse: " + a);
+		check(String.class.getName().equals(b), "f should return a String in the second parse: " + b);
+	}
+	
 	static public final void main(String[] args) {
 		try {
 			final String code = testCode3;
 			final int lastLineBreak = code.lastIndexOf("\n");
 			final String codeToParse = -1 == lastLineBreak ? code : code.substring(0, lastLineBreak);
 			JythonScriptParser.parseAST(codeToParse).print("");
+			System.out.println("\noutline:");
+			OutlineParser.parse(codeToParse).print("");
 		} catch (Exception e) {
 			e.printStackTrace();
 			if (null != e.getCause())
 				e.getCause().printStackTrace();
 		}
+		checkInstanceAttributes();
+		checkOutlineMatchesParse(testCode.substring(0, testCode.lastIndexOf("\n") + 1));
+		checkReassignments();
+		checkTopLevelStatementLines();
+		checkLazyBodies();
+		System.out.println("\nJythonScriptParserTest: OK");
+		System.exit(0); // the python module watcher thread of Scope doesn't end on its own
 	}
 }
@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.scijava.ui.swing.script.autocompletion.CompletionText;
+
+public class MemberDescriptorTest {
+	
+	static private void assertMatch(final MemberDescriptor m, final String seed, final int expected) {
+		assertEquals("'" + seed + "' for " + m.name, expected, m.match(seed, seed.toLowerCase()));
+	}
+	
+	@Test
+	public void testMatch() {
+		final MemberDescriptor m = new MemberDescriptor(new CompletionText("getProcessor()"));
+		assertEquals("getprocessor()", m.lowerName);
+		assertMatch(m, "", MemberDescriptor.PREFIX);
+		assertMatch(m, "getPro", MemberDescriptor.PREFIX);
+		assertMatch(m, "getpro", MemberDescriptor.PREFIX_IGNORE_CASE);
+		assertMatch(m, "GET", MemberDescriptor.PREFIX_IGNORE_CASE);
+		assertMatch(m, "Pro", MemberDescriptor.SUBSTRING);
+		assertMatch(m, "processor", MemberDescriptor.SUBSTRING);
+		assertMatch(m, "etP", MemberDescriptor.SUBSTRING);
+		assertMatch(m, "set", MemberDescriptor.NO_MATCH);
+		assertMatch(m, "getProcessors", MemberDescriptor.NO_MATCH);
+	}
+	
+	@Test
+	public void testCategoryOrder() {
+		// Categories rank best first
+		assertTrue("Categories out of order", MemberDescriptor.PREFIX < MemberDescriptor.PREFIX_IGNORE_CASE
+				&& MemberDescriptor.PREFIX_IGNORE_CASE < MemberDescriptor.SUBSTRING
+				&& MemberDescriptor.SUBSTRING < MemberDescriptor.NO_MATCH);
+	}
+	
+	@Test
+	public void testWrap() {
+		final List<MemberDescriptor> wrapped = MemberDescriptor.wrap(Arrays.asList(new CompletionText("size()"), new CompletionText("width")));
+		assertEquals(2, wrapped.size());
+		assertEquals("size()", wrapped.get(0).name);
+		assertEquals("width", wrapped.get(1).name);
+	}
+}
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.python.antlr.PythonTree;
+import org.python.core.CompileMode;
+import org.python.core.CompilerFlags;
+import org.python.core.ParserFacade;
+
+/**
+ * Measures the parsing primitives that every completion depends on:
+ * {@link JythonScriptParser#parseAST(String)} on scripts of 100, 1000 and 10000 lines,
+ * {@link JythonScriptParser#parseNode(List, Scope, String)} on an already parsed AST,
+ * and {@link JythonScriptParser#parseRight(org.python.core.PyObject, Scope)} on attribute chains of increasing depth.
+ * 
+ * Run like {@link CompletionsForBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	
+	@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+	static public class Script {
+		@Param({"100", "1000", "10000"})
+		public int lines;
+		
+		/** Whether to parse as if the code were new: otherwise, a line is appended to the code,
+		 *  and the statements before it and the parsed segments of large scripts are reused. */
+		@Param({"false", "true"})
+		public boolean fromScratch;
+		
+		String code;
+		List<PythonTree> children;
+		int edits = 0;
+		private int maxParsedSegments;
+		
+		@Setup(Level.Trial)
+		public void setup() {
+			this.code = BenchmarkScripts.generate(this.lines);
+			this.children = ParserFacade.parse(this.code, CompileMode.exec, "<none>", new CompilerFlags()).getChildren();
+			this.maxParsedSegments = JythonScriptParser.MAX_PARSED_SEGMENTS;
+			if (this.fromScratch) JythonScriptParser.MAX_PARSED_SEGMENTS = 0;
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			JythonScriptParser.MAX_PARSED_SEGMENTS = this.maxParsedSegments;
+		}
+		
+		/** @return Code not parsed before, that differs from the previous either at its start or at its end. */
+		String nextCode() {
+			++this.edits;
+			return this.fromScratch ?
+					"# edit " + this.edits + "\n" + this.code
+					: this.code + "edit = " + this.edits + "\n";
+		}
+	}
+	
+	@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+	static public class Chain {
+		/** The number of method calls in the chain, e.g. 2 for "f0.getParentFile().getAbsoluteFile()". */
+		@Param({"1", "10", "100"})
+		public int depth;
+		
+		PythonTree right;
+		Scope scope;
+		
+		@Setup(Level.Trial)
+		public void setup() {
+			final StringBuilder sb = new StringBuilder("f0");
+			for (int i=0; i<this.depth; ++i)
+				sb.append(0 == i % 2 ? ".getParentFile()" : ".getAbsoluteFile()");
+			this.right = ParserFacade.parse(sb.toString(), CompileMode.eval, "<none>", new CompilerFlags()).getChildren().get(0);
+			this.scope = JythonScriptParser.parseAST(BenchmarkScripts.generate(100));
+		}
+	}
+	
+	@Benchmark
+	public Scope parseAST(final Script script) {
+		return JythonScriptParser.parseAST(script.nextCode());
+	}
+	
+	@Benchmark
+	public Scope parseNode(final Script script) {
+		return JythonScriptParser.parseNode(script.children, null, null);
+	}
+	
+	@Benchmark
+	public DotAutocompletions parseRight(final Chain chain) {
+		return JythonScriptParser.parseRight(chain.right, chain.scope);
+	}
+	
+	static public void main(final String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(ParserBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fife.ui.autocomplete.BasicCompletion;
+import org.fife.ui.autocomplete.Completion;
+import org.junit.Test;
+
+public class RankedCompletionsTest {
+	
+	@Test
+	public void testTopK() {
+		final List<String> names = new ArrayList<>();
+		for (int i=0; i<1000; ++i)
+			names.add(String.format("name%04d", 999 - i));
+		final List<String> created = new ArrayList<>();
+		final int k = 10;
+		final RankedCompletions<String> ranked = new RankedCompletions<>(names,
+				s -> s.endsWith("7") ? 0 : 1, // a better category for some
+				s -> s,
+				s -> {
+					created.add(s);
+					return new BasicCompletion(null, s);
+				}, k);
+		
+		final List<Completion> completions = new ArrayList<>(ranked);
+		assertEquals("Completions listed", k, completions.size());
+		assertEquals("Completions created", k, created.size());
+		
+		// The best k, in order: those ending in 7 first, alphabetically
+		final List<String> expected = new ArrayList<>();
+		for (int i=0; expected.size() < k; ++i)
+			if (7 == i % 10) expected.add(String.format("name%04d", i));
+		assertEquals(expected, created);
+		for (int i=0; i<k; ++i)
+			assertSame("Completion " + i + " was created again", completions.get(i), ranked.get(i));
+	}
+	
+	@Test
+	public void testFewerThanK() {
+		final List<String> names = new ArrayList<>();
+		for (int i=0; i<3; ++i)
+			names.add(String.format("name%04d", 999 - i));
+		final RankedCompletions<String> few = new RankedCompletions<>(names, s -> 0, s -> s, s -> new BasicCompletion(null, s), 10);
+		assertEquals("All candidates listed", 3, few.size());
+		assertEquals("name0997", few.get(0).getReplacementText());
+	}
+}
@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * Jython language support for SciJava Script Editor.
+ * %%
+ * Copyright (C) 2020 - 2024 SciJava developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.plugins.scripteditor.jython;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the {@link Scope} queries that every completion depends on, from the innermost of nested scopes:
+ * {@link Scope#find(String, DotAutocompletions)} of a name in the outermost scope,
+ * {@link Scope#findStartsWith2(String)}, {@link Scope#findVarsByType(String, Class)} and {@link Scope#getVars()},
+ * at varying nesting depth and number of names per scope.
+ * 
+ * Run like {@link CompletionsForBenchmark}.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScopeBenchmark {
+	
+	/** The number of nested scopes, like a function within a class within a function, and so on. */
+	@Param({"1", "4", "16"})
+	public int depth;
+	
+	/** The number of variables in each scope. */
+	@Param({"10", "100", "1000"})
+	public int symbols;
+	
+	static private final String[] classNames = {"java.io.File", "java.lang.String", "java.util.ArrayList"};
+	
+	private Scope innermost;
+	private String outermostName, prefix;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		final Scope root = new Scope(null);
+		Scope scope = root;
+		for (int level=0; level<this.depth; ++level) {
+			if (level > 0) scope = new Scope(scope);
+			final Map<String, DotAutocompletions> vars = new HashMap<>();
+			for (int i=0; i<this.symbols; ++i)
+				vars.put("v" + level + "_" + i, new VarDotAutocompletions(classNames[i % classNames.length]));
+			scope.putVars(vars);
+		}
+		root.freeze();
+		this.innermost = scope;
+		this.outermostName = "v0_" + (this.symbols / 2);
+		this.prefix = "v0_1";
+	}
+	
+	@Benchmark
+	public DotAutocompletions find() {
+		return this.innermost.find(this.outermostName, DotAutocompletions.EMPTY);
+	}
+	
+	@Benchmark
+	public Map<String, String> findStartsWith2() {
+		return this.innermost.findStartsWith2(this.prefix);
+	}
+	
+	@Benchmark
+	public void findVarsByType(final Blackhole bh) {
+		this.innermost.findVarsByType("java.io.File", File.class).forEach(bh::consume);
+	}
+	
+	@Benchmark
+	public Map<String, DotAutocompletions> getVars() {
+		return this.innermost.getVars();
+	}
+	
+	static public void main(final String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(ScopeBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}